@@ -0,0 +1,462 @@
+/*
+ GradeTrackerBenchmark.java
+ Console micro-benchmarks for the Student Grade Tracker.
+ - lookup: times name lookups against the indexed GradeTracker and against
+   the old linear equalsIgnoreCase scan at 10k / 100k / 1M students
+ - memory: heap footprint of grades stored as ArrayList<Double> vs GradeList
+ - csv [MB]: generates a CSV file (default 1024 MB) and times the streaming,
+   memory-mapped and parallel importers on it and a binary snapshot load of
+   the result, checking all build the same tracker
+ - stress: many threads register students and append grades on a
+   ConcurrentGradeTracker while another reads overall statistics, then
+   checks that no student or grade was lost; runs with locked and with
+   lock-free statistics, over 1000 names and over one hot student
+ - rank: times topK/bottomK by average against a full sort on 400k students
+ - batch: 100k (name, grade) rows through GradeTracker.addGrades against
+   lookup-and-addGrade per row, over 1k, 10k and 100k distinct names
+ - quantile: median/p10/p90 of 10M grades from the sketch against an exact
+   sort, with the sketch's rank error
+ - aggregate: sequential against parallel overall statistics from 1k to
+   4M students, to find where parallel starts to pay off
+ - export: times the old PrintWriter export against the buffered stream and
+   channel exporters on 1M students, checking the files are identical
+
+ To compile (needs the tracker classes alongside):
+   javac StudentGradeTrackerApp.java GradeTrackerBenchmark.java
+ It uses the package-private tracker classes declared in that file, so
+ with -Xlint:all javac warns about every use of them; leave that lint out:
+   javac -Xlint:all,-auxiliaryclass StudentGradeTrackerApp.java GradeTrackerBenchmark.java
+ To run:
+   java -Xmx4g GradeTrackerBenchmark [lookup|memory|csv [MB]|export|stress|rank|batch|quantile|aggregate]
+*/
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.Random;
+
+public class GradeTrackerBenchmark {
+    private static final int[] SIZES = { 10_000, 100_000, 1_000_000 };
+
+    public static void main(String[] args) throws IOException {
+        String mode = args.length > 0 ? args[0] : "all";
+        if (mode.equals("all") || mode.equals("lookup")) {
+            for (int n : SIZES) {
+                benchLookup(n);
+            }
+        }
+        if (mode.equals("all") || mode.equals("memory")) {
+            reportGradeMemory(10_000_000);
+        }
+        if (mode.equals("csv")) {
+            long mb = args.length > 1 ? Long.parseLong(args[1]) : 1024;
+            benchImport(mb << 20);
+        }
+        if (mode.equals("export")) {
+            benchExport(1_000_000);
+        }
+        if (mode.equals("quantile")) {
+            benchQuantile(1_000_000, 10);
+        }
+        if (mode.equals("aggregate")) {
+            for (int n = 1_000; n <= 4_096_000; n *= 4) benchAggregate(n);
+        }
+        if (mode.equals("rank")) {
+            benchRank(400_000, 100);
+        }
+        if (mode.equals("batch")) {
+            for (int names : new int[] { 1_000, 10_000, 100_000 }) benchBatch(100_000, names);
+        }
+        if (mode.equals("stress")) {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+            for (boolean lockFree : new boolean[] { false, true }) {
+                stressConcurrent(threads, 1_000_000, 1_000, lockFree);
+                stressConcurrent(threads, 1_000_000, 1, lockFree);
+            }
+        }
+    }
+
+    private static void benchLookup(int n) {
+        GradeTracker tracker = roster(n, 42, 0);
+        ArrayList<Student> list = new ArrayList<>(tracker.allStudents());
+
+        Random rnd = new Random(42);
+        int indexedOps = 1_000_000;
+        // The scan is O(n) per call, so give it a budget of roughly 1e9 comparisons.
+        int scanOps = Math.max(10, 1_000_000_000 / n / 10);
+        String[] probes = new String[1024];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = "STUDENT" + rnd.nextInt(n);
+        }
+
+        long hits = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < indexedOps; i++) {
+            if (tracker.findStudentByName(probes[i & 1023]) != null) hits++;
+        }
+        long indexedNs = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        for (int i = 0; i < scanOps; i++) {
+            if (linearFind(list, probes[i & 1023]) != null) hits++;
+        }
+        long scanNs = System.nanoTime() - t0;
+
+        System.out.println(String.format("n=%,d  indexed: %.1f ns/op  linear: %.1f ns/op  (hits=%d)",
+            n, (double) indexedNs / indexedOps, (double) scanNs / scanOps, hits));
+    }
+
+    private static void reportGradeMemory(int grades) {
+        Random rnd = new Random(7);
+        long base = usedHeap();
+        ArrayList<Double> boxed = new ArrayList<>();
+        for (int i = 0; i < grades; i++) boxed.add(rnd.nextInt(10001) / 100.0);
+        long boxedBytes = usedHeap() - base;
+        int keep = boxed.size();
+        boxed = null;
+
+        base = usedHeap();
+        GradeList primitive = new GradeList();
+        for (int i = 0; i < grades; i++) primitive.add(rnd.nextInt(10001) / 100.0);
+        long primitiveBytes = usedHeap() - base;
+        keep += primitive.size();
+
+        System.out.println(String.format("%,d grades  ArrayList<Double>: %,d bytes (%.1f B/grade)"
+            + "  GradeList: %,d bytes (%.1f B/grade)  (kept=%d)",
+            grades, boxedBytes, (double) boxedBytes / grades,
+            primitiveBytes, (double) primitiveBytes / grades, keep));
+    }
+
+    private static void benchImport(long bytes) throws IOException {
+        File f = File.createTempFile("grades", ".csv");
+        f.deleteOnExit();
+        writeRoster(f, bytes, 1_000_000, 42);
+        System.out.println(String.format("Generated %,d bytes in %s", f.length(), f));
+
+        GradeTracker streamed = new GradeTracker();
+        long t0 = System.nanoTime();
+        streamed.importCSV(f.getPath(), ImportMode.STREAM);
+        long streamNs = System.nanoTime() - t0;
+
+        GradeTracker mapped = new GradeTracker();
+        t0 = System.nanoTime();
+        mapped.importCSV(f.getPath(), ImportMode.MAPPED);
+        long mappedNs = System.nanoTime() - t0;
+
+        GradeTracker parallel = new GradeTracker();
+        t0 = System.nanoTime();
+        parallel.importCSV(f.getPath(), ImportMode.PARALLEL);
+        long parallelNs = System.nanoTime() - t0;
+
+        System.out.println(String.format("stream: %.2f s (%.0f MB/s)  mapped: %.2f s (%.0f MB/s)"
+            + "  parallel x%d: %.2f s (%.0f MB/s)  same state: %b",
+            streamNs / 1e9, bytes / 1048576.0 / (streamNs / 1e9),
+            mappedNs / 1e9, bytes / 1048576.0 / (mappedNs / 1e9),
+            Runtime.getRuntime().availableProcessors(),
+            parallelNs / 1e9, bytes / 1048576.0 / (parallelNs / 1e9),
+            sameState(streamed, mapped) && sameState(streamed, parallel)));
+
+        File snap = File.createTempFile("grades", ".sgts");
+        snap.deleteOnExit();
+        t0 = System.nanoTime();
+        streamed.saveSnapshot(snap.getPath());
+        long saveNs = System.nanoTime() - t0;
+        GradeTracker loaded = new GradeTracker();
+        t0 = System.nanoTime();
+        loaded.loadSnapshot(snap.getPath());
+        long loadNs = System.nanoTime() - t0;
+        System.out.println(String.format("snapshot: %,d bytes  save: %.2f s  load: %.2f s (%.0f MB/s)  same state: %b",
+            snap.length(), saveNs / 1e9, loadNs / 1e9, snap.length() / 1048576.0 / (loadNs / 1e9),
+            sameState(streamed, loaded)));
+        snap.delete();
+        f.delete();
+    }
+
+    private static void benchExport(int n) throws IOException {
+        GradeTracker tracker = GradeTrackerSuite.roster(n, 11);
+        File old = File.createTempFile("export-old", ".csv");
+        File streamed = File.createTempFile("export-stream", ".csv");
+        File channel = File.createTempFile("export-channel", ".csv");
+
+        long t0 = System.nanoTime();
+        printWriterExport(tracker, old);
+        long oldNs = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        tracker.exportCSV(streamed.getPath(), ExportMode.STREAM);
+        long streamNs = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        tracker.exportCSV(channel.getPath(), ExportMode.CHANNEL);
+        long channelNs = System.nanoTime() - t0;
+
+        boolean same = sameBytes(old, streamed) && sameBytes(old, channel);
+        System.out.println(String.format("n=%,d  %,d bytes  PrintWriter: %.2f s  stream: %.2f s  channel: %.2f s  identical: %b",
+            n, old.length(), oldNs / 1e9, streamNs / 1e9, channelNs / 1e9, same));
+        old.delete();
+        streamed.delete();
+        channel.delete();
+    }
+
+    private static void stressConcurrent(int threads, int perThread, int names, boolean lockFree) {
+        ConcurrentGradeTracker tracker = new ConcurrentGradeTracker(lockFree);
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            writers[t] = new Thread(() -> {
+                // Grades are small integers, so every sum is exact in any order.
+                for (int i = 0; i < perThread; i++) {
+                    int k = (i + seed) % names;
+                    tracker.addGrade("Student" + k, k % 101);
+                }
+            });
+        }
+        long[] reads = new long[1];
+        Thread reader = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (tracker.overallStats().getCount() < 0) break;
+                reads[0]++;
+            }
+        });
+        long t0 = System.nanoTime();
+        reader.start();
+        for (Thread w : writers) w.start();
+        try {
+            for (Thread w : writers) w.join();
+            reader.interrupt();
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long ns = System.nanoTime() - t0;
+
+        long expectedCount = (long) threads * perThread;
+        double expectedSum = 0;
+        long[] perName = new long[names];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                int k = (i + t) % names;
+                perName[k]++;
+                expectedSum += k % 101;
+            }
+        }
+        boolean ok = tracker.studentCount() == names;
+        for (int k = 0; ok && k < names; k++) {
+            ok = tracker.findStudentByName("student" + k).getGradeCount() == perName[k];
+        }
+        OverallStats stats = tracker.overallStats();
+        ok = ok && stats.getCount() == expectedCount && stats.getSum() == expectedSum
+            && stats.getLowest() == 0 && stats.getHighest() == Math.min(names - 1, 100);
+        System.out.println(String.format("%s stats  threads=%d  names=%,d  grades=%,d  %.2f s (%,.0f grades/sec)"
+            + "  stats reads=%,d  no lost grades: %b",
+            lockFree ? "lock-free" : "locked   ", threads, names, expectedCount, ns / 1e9,
+            expectedCount / (ns / 1e9), reads[0], ok));
+        if (!ok) {
+            throw new AssertionError(String.format("lost grades: expected %,d grades summing to %.0f, got %,d summing to %.0f",
+                expectedCount, expectedSum, stats.getCount(), stats.getSum()));
+        }
+    }
+
+    private static void benchQuantile(int n, int gradesEach) {
+        GradeTracker tracker = roster(n, 8, gradesEach);
+        double[] qs = { 0.1, 0.5, 0.9 };
+        long t0 = System.nanoTime();
+        double[] approx = new double[qs.length];
+        for (int i = 0; i < qs.length; i++) approx[i] = tracker.quantile(qs[i]);
+        long sketchNs = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        double[] all = new double[(int) tracker.gradeCount()];
+        int k = 0;
+        for (Student s : tracker.allStudents()) {
+            for (int i = 0; i < s.getGradeCount(); i++) all[k++] = s.getGrade(i);
+        }
+        Arrays.sort(all);
+        long sortNs = System.nanoTime() - t0;
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < qs.length; i++) {
+            int lo = lowerBound(all, approx[i]);
+            int hi = lowerBound(all, Math.nextUp(approx[i]));
+            // With ties the sketch value covers the ranks [lo, hi).
+            double q = qs[i] * all.length;
+            double err = q < lo ? lo - q : q > hi ? q - hi : 0;
+            sb.append(String.format("  p%.0f=%.2f (exact %.2f, rank err %.3f%%)",
+                qs[i] * 100, approx[i], all[(int) (qs[i] * (all.length - 1))], 100 * err / all.length));
+        }
+        System.out.println(String.format("%,d grades  sketch: %.2f ms  exact sort: %.2f ms", all.length,
+            sketchNs / 1e6, sortNs / 1e6) + sb);
+    }
+
+    private static int lowerBound(double[] a, double v) {
+        int lo = 0;
+        int hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < v) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static void benchAggregate(int n) {
+        GradeTracker tracker = roster(n, 9, 4);
+        int rounds = Math.max(5, 20_000_000 / n);
+        double check = 0;
+        for (int warm = 0; warm < 2; warm++) {
+            check += tracker.overallStatsSequential().getMean() + tracker.overallStatsParallel().getMean();
+        }
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) check += tracker.overallStatsSequential().getMean();
+        long seqNs = (System.nanoTime() - t0) / rounds;
+        t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) check += tracker.overallStatsParallel().getMean();
+        long parNs = (System.nanoTime() - t0) / rounds;
+        OverallStats a = tracker.overallStatsSequential();
+        OverallStats b = tracker.overallStatsParallel();
+        boolean same = a.getCount() == b.getCount() && a.getHighest() == b.getHighest()
+            && a.getLowest() == b.getLowest() && Math.abs(a.getVariance() - b.getVariance()) <= 1e-9 * a.getVariance();
+        System.out.println(String.format("n=%,9d  sequential: %10.1f us  parallel x%d: %10.1f us  %s  same: %b  (%.0f)",
+            n, seqNs / 1e3, ForkJoinPool.getCommonPoolParallelism(), parNs / 1e3,
+            parNs < seqNs ? "parallel wins" : "sequential wins", same, check % 10));
+    }
+
+    private static void benchRank(int n, int k) {
+        GradeTracker tracker = roster(n, 5, 8);
+        int rounds = 20;
+        List<Student> top = null;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            top = tracker.topK(k, RankMetric.AVERAGE);
+            tracker.bottomK(k, RankMetric.AVERAGE);
+        }
+        long heapNs = (System.nanoTime() - t0) / (2 * rounds);
+
+        List<Student> sorted = null;
+        t0 = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            sorted = new ArrayList<>(tracker.allStudents());
+            sorted.sort(Comparator.comparingDouble(Student::getAverage).reversed()
+                .thenComparing(Student::getName, String.CASE_INSENSITIVE_ORDER));
+        }
+        long sortNs = (System.nanoTime() - t0) / rounds;
+        System.out.println(String.format("n=%,d k=%d  heap: %.2f ms  full sort: %.2f ms  same top: %b",
+            n, k, heapNs / 1e6, sortNs / 1e6, top.equals(sorted.subList(0, k))));
+    }
+
+    private static void benchBatch(int rows, int names) {
+        Random rnd = new Random(9);
+        GradeBatch batch = new GradeBatch(rows);
+        for (int i = 0; i < rows; i++) batch.add("Student" + rnd.nextInt(names), rnd.nextInt(10001) / 100.0);
+        int rounds = 10;
+        GradeTracker single = null;
+        long t0 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            single = new GradeTracker();
+            for (int i = 0; i < rows; i++) {
+                Student s = single.findStudentByName(batch.name(i));
+                if (s == null) {
+                    single.addStudent(batch.name(i));
+                    s = single.findStudentByName(batch.name(i));
+                }
+                s.addGrade(batch.grade(i));
+            }
+        }
+        long singleNs = (System.nanoTime() - t0) / rounds;
+        GradeTracker batched = null;
+        t0 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            batched = new GradeTracker();
+            batched.addGrades(batch);
+        }
+        long batchNs = (System.nanoTime() - t0) / rounds;
+        System.out.println(String.format("rows=%,d names=%,d  one by one: %.2f ms  addGrades: %.2f ms  same: %b",
+            rows, names, singleNs / 1e6, batchNs / 1e6, sameState(single, batched)));
+    }
+
+    // The exportCSV loop used before CsvGradeWriter.
+    private static void printWriterExport(GradeTracker tracker, File f) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new FileWriter(f))) {
+            for (Student s : tracker.allStudents()) {
+                StringBuilder sb = new StringBuilder();
+                sb.append(s.getName());
+                for (double g : s.getGrades()) {
+                    sb.append(",").append(g);
+                }
+                pw.println(sb.toString());
+            }
+        }
+    }
+
+    private static boolean sameBytes(File a, File b) throws IOException {
+        return Arrays.equals(Files.readAllBytes(a.toPath()),
+            Files.readAllBytes(b.toPath()));
+    }
+
+    // Writes roughly `bytes` of CSV rows cycling over `names` distinct students.
+    static void writeRoster(File f, long bytes, int names, long seed) throws IOException {
+        Random rnd = new Random(seed);
+        try (Writer w = new BufferedWriter(new FileWriter(f), 1 << 16)) {
+            long written = 0;
+            StringBuilder sb = new StringBuilder();
+            for (long row = 0; written < bytes; row++) {
+                sb.setLength(0);
+                sb.append("Student").append(row % names);
+                int grades = rnd.nextInt(12);
+                for (int i = 0; i < grades; i++) {
+                    sb.append(',').append(rnd.nextInt(10001) / 100.0);
+                }
+                sb.append('\n');
+                w.append(sb);
+                written += sb.length();
+            }
+        }
+    }
+
+    // n students named Student0..Student(n-1) with gradesPerStudent grades each, fixed by the seed.
+    static GradeTracker roster(int n, long seed, int gradesPerStudent) {
+        Random rnd = new Random(seed);
+        GradeTracker t = new GradeTracker();
+        for (int i = 0; i < n; i++) {
+            String name = "Student" + i;
+            t.addStudent(name);
+            Student s = t.findStudentByName(name);
+            for (int g = 0; g < gradesPerStudent; g++) s.addGrade(rnd.nextInt(10001) / 100.0);
+        }
+        return t;
+    }
+
+    static boolean sameState(GradeTracker a, GradeTracker b) {
+        if (a.studentCount() != b.studentCount()) return false;
+        Iterator<Student> ia = a.allStudents().iterator();
+        Iterator<Student> ib = b.allStudents().iterator();
+        while (ia.hasNext()) {
+            Student x = ia.next();
+            Student y = ib.next();
+            if (!x.getName().equals(y.getName()) || x.getGradeCount() != y.getGradeCount()) return false;
+            for (int i = 0; i < x.getGradeCount(); i++) {
+                if (Double.compare(x.getGrade(i), y.getGrade(i)) != 0) return false;
+            }
+        }
+        return true;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // The lookup GradeTracker used before the name index.
+    private static Student linearFind(ArrayList<Student> students, String name) {
+        for (Student s : students) {
+            if (s.getName().equalsIgnoreCase(name.trim())) return s;
+        }
+        return null;
+    }
+}
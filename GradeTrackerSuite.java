@@ -0,0 +1,309 @@
+/*
+ GradeTrackerSuite.java
+ Repeatable benchmark suite for the Student Grade Tracker hot paths.
+ - Seeded synthetic rosters at several sizes (same seed, same roster)
+ - Warmup and measured iterations per benchmark, reported as ns/op with
+   the 99.9% confidence half-width of the mean as the error, like JMH
+ - Benchmarks share no state: they all read one untouched roster (addGrade
+   gets a fresh copy per run, importCSV its own file), so a result does not
+   depend on --only, --warmup or --iterations
+ - Optional JSON results in the layout JMH writes with -rf json, so runs
+   from different versions can be diffed with the same tools
+
+ Benchmarks: findStudentByName, addStudent, addGrade, studentStats
+ (getAverage/getHighest/getLowest), overallAverage, printAllStudents (to a
+ null stream), exportCSV and importCSV. Formatting pairs, old against new:
+ stringFormat2f / twoDecimals render every average with "%.2f" and with
+ TwoDecimals.append; studentLineFormat / studentAppendTo render every
+ student line with the old String.format pattern and with Student.appendTo.
+
+ To compile (needs the tracker classes alongside):
+   javac StudentGradeTrackerApp.java GradeTrackerSuite.java
+ It uses the package-private tracker classes declared in that file, so
+ with -Xlint:all javac warns about every use of them; leave that lint out:
+   javac -Xlint:all,-auxiliaryclass StudentGradeTrackerApp.java GradeTrackerSuite.java
+ To run:
+   java -Xmx4g GradeTrackerSuite [--sizes 10000,100000] [--seed 42]
+        [--warmup 3] [--iterations 5] [--only name,...] [--json results.json]
+*/
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class GradeTrackerSuite {
+    private static final PrintStream OUT = System.out;
+    private static final PrintStream NULL = new PrintStream(OutputStream.nullOutputStream());
+    // Results feed this so the JIT cannot drop the measured work.
+    private static volatile double sink;
+
+    /* One benchmark body; returns how many operations it performed. */
+    private interface Body {
+        long run() throws IOException;
+    }
+
+    /* One benchmark's measured iterations, in ns/op. */
+    private static final class Result {
+        final String name;
+        final int size;
+        final double[] nsPerOp;
+
+        Result(String name, int size, double[] nsPerOp) {
+            this.name = name;
+            this.size = size;
+            this.nsPerOp = nsPerOp;
+        }
+
+        double mean() {
+            double s = 0;
+            for (double v : nsPerOp) s += v;
+            return s / nsPerOp.length;
+        }
+
+        double stdDev() {
+            double m = mean();
+            double s = 0;
+            for (double v : nsPerOp) s += (v - m) * (v - m);
+            return nsPerOp.length < 2 ? 0 : Math.sqrt(s / (nsPerOp.length - 1));
+        }
+
+        // Half-width of the 99.9% confidence interval of the mean, as JMH's scoreError; NaN below 2 iterations.
+        double error() {
+            int n = nsPerOp.length;
+            return n < 2 ? Double.NaN : studentT999(n - 1) * stdDev() / Math.sqrt(n);
+        }
+    }
+
+    // Two-sided 99.9% Student t critical values for 1..30 degrees of freedom.
+    private static final double[] T999 = {
+        636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+        4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+        3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+
+    // Beyond the table, the Cornish-Fisher expansion around the normal quantile (within 0.1%).
+    static double studentT999(int df) {
+        if (df <= T999.length) return T999[df - 1];
+        double z = 3.290527;
+        double z3 = z * z * z;
+        return z + (z3 + z) / (4.0 * df) + (5 * z3 * z * z + 16 * z3 + 3 * z) / (96.0 * df * df);
+    }
+
+    private int[] sizes = { 10_000, 100_000 };
+    private long seed = 42;
+    private int warmup = 3;
+    private int iterations = 5;
+    private List<String> only;
+    private String json;
+    private final List<Result> results = new ArrayList<>();
+
+    public static void main(String[] args) throws IOException {
+        GradeTrackerSuite suite = new GradeTrackerSuite();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String v = args[i + 1];
+            switch (args[i]) {
+                case "--sizes": suite.sizes = Arrays.stream(v.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "--seed": suite.seed = Long.parseLong(v); break;
+                case "--warmup": suite.warmup = Integer.parseInt(v); break;
+                case "--iterations": suite.iterations = Integer.parseInt(v); break;
+                case "--only": suite.only = Arrays.asList(v.split(",")); break;
+                case "--json": suite.json = v; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        suite.runAll();
+        if (suite.json != null) {
+            Files.write(Paths.get(suite.json), suite.toJson().getBytes(StandardCharsets.UTF_8));
+            OUT.println("Wrote " + suite.json);
+        }
+    }
+
+    private void runAll() throws IOException {
+        OUT.println(String.format("%-20s %10s %14s %14s", "Benchmark", "size", "ns/op", "error (99.9%)"));
+        for (int n : sizes) {
+            // Read-only for every benchmark below, so results do not depend on
+            // which others ran (--only) or how often (--warmup, --iterations).
+            GradeTracker roster = roster(n, seed);
+            String[] probes = probes(n, seed);
+            File importCsv = File.createTempFile("suite-in", ".csv");
+            File exportCsv = File.createTempFile("suite-out", ".csv");
+            importCsv.deleteOnExit();
+            exportCsv.deleteOnExit();
+            roster.exportCSV(importCsv.getPath());
+            // Fresh seeded copy per run for the one benchmark that mutates its roster.
+            GradeTracker[] target = new GradeTracker[1];
+
+            measure("findStudentByName", n, () -> {
+                double acc = 0;
+                for (String p : probes) acc += roster.findStudentByName(p).getGradeCount();
+                sink = acc;
+                return probes.length;
+            });
+            measure("addStudent", n, () -> {
+                GradeTracker t = new GradeTracker();
+                for (int i = 0; i < n; i++) t.addStudent("Student" + i);
+                sink = t.studentCount();
+                return n;
+            });
+            measure("addGrade", n, () -> target[0] = roster(n, seed), () -> {
+                Random rnd = new Random(seed);
+                for (String p : probes) target[0].findStudentByName(p).addGrade(rnd.nextInt(10001) / 100.0);
+                return probes.length;
+            });
+            measure("studentStats", n, () -> {
+                double acc = 0;
+                for (Student s : roster.allStudents()) {
+                    acc += s.getAverage() + s.getHighest() + s.getLowest();
+                }
+                sink = acc;
+                return n;
+            });
+            measure("overallAverage", n, () -> {
+                double acc = 0;
+                int calls = Math.max(1, 1_000_000 / n);
+                for (int i = 0; i < calls; i++) acc += roster.overallAverage();
+                sink = acc;
+                return calls;
+            });
+            measure("stringFormat2f", n, () -> {
+                long len = 0;
+                for (Student s : roster.allStudents()) {
+                    if (s.getGradeCount() > 0) len += String.format("%.2f", s.getAverage()).length();
+                }
+                sink = len;
+                return n;
+            });
+            measure("twoDecimals", n, () -> {
+                StringBuilder sb = new StringBuilder(32);
+                long len = 0;
+                for (Student s : roster.allStudents()) {
+                    if (s.getGradeCount() == 0) continue; // reports print N/A for these
+                    sb.setLength(0);
+                    len += TwoDecimals.append(sb, s.getAverage()).length();
+                }
+                sink = len;
+                return n;
+            });
+            measure("studentLineFormat", n, () -> {
+                long len = 0;
+                for (Student s : roster.allStudents()) {
+                    len += (s.getGradeCount() == 0 ? String.format("%s: No grades", s.getName())
+                        : String.format("%s | Grades: %s | Avg: %.2f | High: %.2f | Low: %.2f", s.getName(),
+                            s.getGrades().toString(), s.getAverage(), s.getHighest(), s.getLowest())).length();
+                }
+                sink = len;
+                return n;
+            });
+            measure("studentAppendTo", n, () -> {
+                StringBuilder sb = new StringBuilder(256);
+                long len = 0;
+                for (Student s : roster.allStudents()) {
+                    sb.setLength(0);
+                    len += s.appendTo(sb).length();
+                }
+                sink = len;
+                return n;
+            });
+            measure("printAllStudents", n, () -> {
+                roster.printAllStudents();
+                return n;
+            });
+            measure("exportCSV", n, () -> {
+                roster.exportCSV(exportCsv.getPath());
+                return n;
+            });
+            measure("importCSV", n, () -> {
+                GradeTracker t = new GradeTracker();
+                t.importCSV(importCsv.getPath());
+                sink = t.studentCount();
+                return n;
+            });
+            target[0] = null;
+            importCsv.delete();
+            exportCsv.delete();
+        }
+    }
+
+    private void measure(String name, int size, Body body) throws IOException {
+        measure(name, size, () -> { }, body);
+    }
+
+    // setup runs untimed before every warmup and measured run.
+    private void measure(String name, int size, Runnable setup, Body body) throws IOException {
+        if (only != null && !only.contains(name)) return;
+        double[] ns = new double[iterations];
+        System.setOut(NULL); // printAllStudents and the CSV messages go nowhere
+        try {
+            for (int i = 0; i < warmup; i++) {
+                setup.run();
+                body.run();
+            }
+            for (int i = 0; i < iterations; i++) {
+                setup.run();
+                long t0 = System.nanoTime();
+                long ops = body.run();
+                ns[i] = (double) (System.nanoTime() - t0) / ops;
+            }
+        } finally {
+            System.setOut(OUT);
+        }
+        Result r = new Result(name, size, ns);
+        results.add(r);
+        OUT.println(String.format("%-20s %10d %14.1f %14.1f", name, size, r.mean(), r.error()));
+    }
+
+    // n students named Student0..Student(n-1) with 0-11 grades each, fixed by the seed.
+    static GradeTracker roster(int n, long seed) {
+        Random rnd = new Random(seed);
+        GradeTracker t = new GradeTracker();
+        for (int i = 0; i < n; i++) {
+            String name = "Student" + i;
+            t.addStudent(name);
+            Student s = t.findStudentByName(name);
+            int grades = rnd.nextInt(12);
+            for (int g = 0; g < grades; g++) s.addGrade(rnd.nextInt(10001) / 100.0);
+        }
+        return t;
+    }
+
+    // 100k lookup names drawn from the roster, in mixed case.
+    static String[] probes(int n, long seed) {
+        Random rnd = new Random(seed ^ 0x9e3779b97f4a7c15L);
+        String[] probes = new String[100_000];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = (rnd.nextBoolean() ? "student" : "STUDENT") + rnd.nextInt(n);
+        }
+        return probes;
+    }
+
+    // Same fields as JMH's JSON result format (mode avgt, unit ns/op).
+    String toJson() {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            sb.append("  {\n");
+            sb.append("    \"benchmark\": \"GradeTrackerSuite.").append(r.name).append("\",\n");
+            sb.append("    \"mode\": \"avgt\",\n");
+            sb.append("    \"warmupIterations\": ").append(warmup).append(",\n");
+            sb.append("    \"measurementIterations\": ").append(iterations).append(",\n");
+            sb.append("    \"params\": { \"size\": \"").append(r.size).append("\", \"seed\": \"").append(seed).append("\" },\n");
+            sb.append("    \"primaryMetric\": {\n");
+            sb.append("      \"score\": ").append(r.mean()).append(",\n");
+            double err = r.error();
+            sb.append("      \"scoreError\": ").append(Double.isNaN(err) ? "\"NaN\"" : Double.toString(err)).append(",\n");
+            sb.append("      \"scoreConfidence\": [").append(Double.isNaN(err) ? "\"NaN\"" : Double.toString(r.mean() - err))
+                .append(", ").append(Double.isNaN(err) ? "\"NaN\"" : Double.toString(r.mean() + err)).append("],\n");
+            sb.append("      \"scoreUnit\": \"ns/op\",\n");
+            sb.append("      \"rawData\": [[");
+            for (int j = 0; j < r.nsPerOp.length; j++) {
+                if (j > 0) sb.append(", ");
+                sb.append(r.nsPerOp[j]);
+            }
+            sb.append("]]\n    }\n  }").append(i + 1 < results.size() ? ",\n" : "\n");
+        }
+        return sb.append("]\n").toString();
+    }
+}
@@ -1,145 +1,2618 @@
 /*
  StudentGradeTrackerApp.java
  Single-file console Java Student Grade Tracker
- - Uses ArrayLists for students and grades
+ - Stores grades in primitive double buffers and students in a case-folded name index
  - Add students, add grades, remove students, show summary
- - Export / import CSV (file paths relative to working directory)
+ - Export / import CSV, UTF-8 encoded (file paths relative to working directory)
+ - Save / load a binary snapshot of the whole tracker
+ - Optional write-ahead log (--wal <dir>) so changes survive a crash
+ - Optional operation metrics (--metrics): counts, latency percentiles, gauges
  
  To compile:
    javac StudentGradeTrackerApp.java
  To run:
-   java StudentGradeTrackerApp
+   java StudentGradeTrackerApp [--wal <dir>] [--metrics]
+ Batch mode (no menu; see runCommand for the commands):
+   java StudentGradeTrackerApp [options] -c "import students.csv" -c summary
+   java StudentGradeTrackerApp [options] --script jobs.txt   (- reads stdin)
 */
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.OptionalDouble;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleConsumer;
 import java.util.stream.DoubleStream;
+import java.util.zip.CRC32C;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormatSymbols;
+
+/* GradeList: growable buffer of primitive doubles (8 bytes per grade, no boxing) */
+class GradeList {
+    private static final double[] EMPTY = new double[0];
+
+    private double[] data;
+    private int size;
+
+    public GradeList() {
+        data = EMPTY;
+    }
+
+    public GradeList(int capacity) {
+        data = capacity == 0 ? EMPTY : new double[capacity];
+    }
+
+    public GradeList(GradeList other) {
+        data = other.size == 0 ? EMPTY : Arrays.copyOf(other.data, other.size);
+        size = other.size;
+    }
+
+    public void add(double g) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, Math.max(4, size + (size >> 1)));
+        }
+        data[size++] = g;
+    }
+
+    // Appends all of src, growing the backing array at most once.
+    public void addAll(GradeList src) {
+        if (size + src.size > data.length) {
+            data = Arrays.copyOf(data, Math.max(size + src.size, size + (size >> 1)));
+        }
+        System.arraycopy(src.data, 0, data, size, src.size);
+        size += src.size;
+    }
+
+    public double get(int i) {
+        if (i >= size) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        return data[i];
+    }
+
+    public int size() { return size; }
+
+    // Length of the backing array (for memory estimates).
+    int capacity() { return data.length; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public void clear() { size = 0; }
+
+    public void forEach(DoubleConsumer action) {
+        for (int i = 0; i < size; i++) action.accept(data[i]);
+    }
+
+    // Bulk-appends the next n doubles of src.
+    void readFrom(DoubleBuffer src, int n) {
+        if (size + n > data.length) data = Arrays.copyOf(data, Math.max(size + n, 4));
+        src.get(data, size, n);
+        size += n;
+    }
+
+    // Bulk-copies grades from index `from` into dst while it has room; returns how many.
+    int writeTo(DoubleBuffer dst, int from) {
+        int n = Math.min(size - from, dst.remaining());
+        dst.put(data, from, n);
+        return n;
+    }
+
+    // Streams straight off the backing array; nothing is copied.
+    public DoubleStream stream() {
+        return Arrays.stream(data, 0, size);
+    }
+
+    public ArrayList<Double> toArrayList() {
+        ArrayList<Double> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) out.add(data[i]);
+        return out;
+    }
+
+    // Same text as ArrayList<Double>.toString(), e.g. "[90.0, 82.5]".
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(size * 6 + 2)).toString();
+    }
+
+    StringBuilder appendTo(StringBuilder sb) {
+        sb.append('[');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(data[i]);
+        }
+        return sb.append(']');
+    }
+}
+
+/*
+ TwoDecimals: String.format("%.2f") without java.util.Formatter. Formatter
+ rounds HALF_UP on the decimal digits Double.toString would print, not on
+ the exact binary value, so 1.005 (really 1.00499999...) prints as 1.01.
+ Below 1e12 a double is closer than half an ulp to at most one three-place
+ tie t = (2m+1)/200, so it rounds up exactly when it is >= the double
+ nearest t; (2m+1)/200.0 is that double, since the division is correctly
+ rounded. NaN, infinities and larger values go through String.format. The
+ decimal separator and digits come from the default format locale when the
+ class loads, as Formatter would use them. append writes the digits
+ straight into the caller's builder and allocates nothing below 1e12.
+*/
+final class TwoDecimals {
+    private static final double FAST_LIMIT = 1e12;
+    private static final char POINT;
+    private static final char ZERO;
+
+    static {
+        DecimalFormatSymbols dfs = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+        POINT = dfs.getDecimalSeparator();
+        ZERO = dfs.getZeroDigit();
+    }
+
+    private TwoDecimals() {}
+
+    static String format(double v) {
+        return append(new StringBuilder(17), v).toString();
+    }
+
+    static StringBuilder append(StringBuilder sb, double v) {
+        double a = Math.abs(v);
+        if (!(a < FAST_LIMIT)) return sb.append(String.format("%.2f", v));
+        long n = hundredths(a);
+        if (Double.doubleToRawLongBits(v) < 0) sb.append('-');
+        // Integer digits are filled in backwards so every division is by the constant 10.
+        long whole = n / 100;
+        int end = sb.length() + digits(whole);
+        sb.setLength(end);
+        do {
+            sb.setCharAt(--end, (char) (ZERO + whole % 10));
+            whole /= 10;
+        } while (whole > 0);
+        int frac = (int) (n % 100);
+        return sb.append(POINT).append((char) (ZERO + frac / 10)).append((char) (ZERO + frac % 10));
+    }
+
+    // |v| * 100 rounded HALF_UP as described above; 0 <= a < FAST_LIMIT.
+    private static long hundredths(double a) {
+        long m = (long) (a * 100);
+        return a >= (2 * m + 1) / 200.0 ? m + 1 : m;
+    }
+
+    // Decimal digits in x >= 0 (1 for x = 0).
+    private static int digits(long x) {
+        int d = 1;
+        for (long p = 10; p <= x; p *= 10) d++;
+        return d;
+    }
+}
 
 /* Student class */
 class Student {
     private String name;
-    private ArrayList<Double> grades;
+    private GradeList grades;
+    // Running statistics, kept in step with grades so the getters are O(1).
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    // Welford running mean and sum of squared deviations, for the variance.
+    private double mean;
+    private double m2;
+    // Set by a tracker with a write-ahead log; mutations are appended to it.
+    WriteAheadLog log;
+    // Tracker holding this student; told about every grade change.
+    GradeTracker owner;
+    // Lock-free statistics for concurrent writers (see shareStats); null otherwise.
+    private volatile AtomicGradeStats shared;
+
+    public Student(String name) {
+        this.name = name.trim();
+        this.grades = new GradeList();
+    }
+
+    public String getName() { return name; }
+
+    public void addGrade(double g) {
+        TrackerMetrics m = owner == null ? null : owner.metrics;
+        long t0 = m == null ? 0 : System.nanoTime();
+        if (g < 0) {
+            if (m != null) m.record(TrackerMetrics.Op.GRADE, t0, false);
+            throw new IllegalArgumentException("Grade cannot be negative");
+        }
+        AtomicGradeStats st = shared;
+        if (st != null) {
+            // Only the array append is locked; the statistics update is lock-free.
+            synchronized (this) {
+                grades.add(g);
+                st = shared;
+            }
+            st.add(g);
+        } else {
+            grades.add(g);
+            sum += g;
+            min = Math.min(min, g);
+            max = Math.max(max, g);
+            double delta = g - mean;
+            mean += delta / grades.size();
+            m2 += delta * (g - mean);
+        }
+        if (owner != null) owner.gradeAdded(g);
+        if (log != null) log.addGrade(name, g);
+        if (m != null) m.record(TrackerMetrics.Op.GRADE, t0, true);
+    }
+
+    /*
+     Appends already validated grades in one go: the grade array grows at
+     most once, and the batch's own moments (OverallStats.of) are merged into
+     the running statistics with one Chan update (OverallStats.add).
+    */
+    void addGrades(GradeList batch) {
+        int n = batch.size();
+        if (n == 0) return;
+        AtomicGradeStats st = shared;
+        if (st != null) {
+            synchronized (this) {
+                grades.addAll(batch);
+                st = shared;
+            }
+            batch.forEach(st::add);
+        } else {
+            OverallStats merged = new OverallStats();
+            addTo(merged);
+            merged.merge(OverallStats.of(batch));
+            grades.addAll(batch);
+            setStats(merged);
+        }
+        if (owner != null) owner.gradesAppended(batch);
+        if (log != null) log.addGrades(name, batch);
+    }
+
+    /*
+     Switches this student to lock-free statistics: from now on addGrade may
+     be called from many threads at once, and getAverage/getHighest/getLowest
+     are wait-free reads of atomic accumulators (weakly consistent while
+     writers run).
+    */
+    void shareStats() {
+        synchronized (this) {
+            if (shared == null) shared = new AtomicGradeStats(grades.size(), sum, mean, m2, min, max);
+        }
+    }
+
+    public void setGrades(ArrayList<Double> newGrades) {
+        GradeList copy = new GradeList(newGrades.size());
+        for (double g : newGrades) copy.add(g);
+        replaceGrades(copy);
+        if (log != null) log.setGrades(name, grades);
+    }
+
+    public void setGrades(GradeList newGrades) {
+        replaceGrades(new GradeList(newGrades));
+        if (log != null) log.setGrades(name, grades);
+    }
+
+    // Takes ownership of a freshly built list (used by CSV import to skip the copy).
+    void replaceGrades(GradeList owned) {
+        GradeList old = grades;
+        OverallStats st = OverallStats.of(owned);
+        if (shared != null) {
+            // Swap list and accumulators together, so a racing addGrade lands in both or neither.
+            AtomicGradeStats fresh = new AtomicGradeStats(st.getCount(), st.getSum(), st.welfordMean(), st.m2(),
+                st.min(), st.max());
+            synchronized (this) {
+                grades = owned;
+                shared = fresh;
+            }
+        } else {
+            grades = owned;
+            setStats(st);
+        }
+        if (owner != null) owner.gradesReplaced(old, owned);
+    }
+
+    // Takes over the accumulators of st, which must describe exactly the current grades.
+    private void setStats(OverallStats st) {
+        sum = st.getSum();
+        min = st.min();
+        max = st.max();
+        mean = st.welfordMean();
+        m2 = st.m2();
+    }
+
+    // Returns a copy; prefer getGrade/forEachGrade/gradeStream on hot paths.
+    public ArrayList<Double> getGrades() {
+        return grades.toArrayList();
+    }
+
+    public int getGradeCount() { return grades.size(); }
+
+    int gradeCapacity() { return grades.capacity(); }
+
+    public double getGrade(int i) { return grades.get(i); }
+
+    // Read-only, non-copying visits of the grades in insertion order.
+    public void forEachGrade(DoubleConsumer action) {
+        grades.forEach(action);
+    }
+
+    public DoubleStream gradeStream() {
+        return grades.stream();
+    }
+
+    int putGrades(DoubleBuffer dst, int from) {
+        return grades.writeTo(dst, from);
+    }
+
+    GradeList copyGrades() {
+        return new GradeList(grades);
+    }
+
+    // Distribution of this student's grades over the layout of `like` (built on demand).
+    public GradeHistogram histogram(GradeHistogram like) {
+        GradeHistogram h = like.emptyCopy();
+        grades.forEach(h::add);
+        return h;
+    }
+
+    public double getAverage() {
+        AtomicGradeStats st = shared;
+        if (st != null) return st.getMean();
+        return grades.isEmpty() ? Double.NaN : sum / grades.size();
+    }
+
+    public double getHighest() {
+        AtomicGradeStats st = shared;
+        if (st != null) return st.getHighest();
+        return grades.isEmpty() ? Double.NaN : max;
+    }
+
+    public double getLowest() {
+        AtomicGradeStats st = shared;
+        if (st != null) return st.getLowest();
+        return grades.isEmpty() ? Double.NaN : min;
+    }
+
+    // Population variance of the grades (Welford's online algorithm).
+    public double getVariance() {
+        AtomicGradeStats st = shared;
+        if (st != null) return st.getVariance();
+        return grades.isEmpty() ? Double.NaN : m2 / grades.size();
+    }
+
+    public double getStdDev() {
+        return Math.sqrt(getVariance());
+    }
+
+    // Folds this student's running statistics into an overall aggregate.
+    void addTo(OverallStats stats) {
+        AtomicGradeStats st = shared;
+        if (st != null) st.addTo(stats);
+        else stats.add(grades.size(), sum, mean, m2, min, max);
+    }
+
+    // "name | Grades: [...] | Avg: x.xx | High: x.xx | Low: x.xx", or "name: No grades".
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(name.length() + 48 + grades.size() * 6)).toString();
+    }
+
+    // Appends the toString text without going through Formatter.
+    StringBuilder appendTo(StringBuilder sb) {
+        sb.append(name);
+        if (grades.isEmpty()) return sb.append(": No grades");
+        grades.appendTo(sb.append(" | Grades: "));
+        TwoDecimals.append(sb.append(" | Avg: "), getAverage());
+        TwoDecimals.append(sb.append(" | High: "), getHighest());
+        return TwoDecimals.append(sb.append(" | Low: "), getLowest());
+    }
+}
+
+/*
+ OverallStats: count/sum/min/max/variance over every grade in the tracker.
+ Parts are combined with Chan et al.'s pairwise update of the Welford mean
+ and squared deviations, so merging partial results in any grouping gives
+ the same variance as one sequential pass (up to rounding).
+*/
+class OverallStats {
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double mean;
+    private double m2;
+
+    void add(long n, double partSum, double partMean, double partM2, double partMin, double partMax) {
+        if (n == 0) return;
+        long total = count + n;
+        double delta = partMean - mean;
+        mean += delta * n / total;
+        m2 += partM2 + delta * delta * ((double) count * n / total);
+        count = total;
+        sum += partSum;
+        min = Math.min(min, partMin);
+        max = Math.max(max, partMax);
+    }
+
+    public void merge(OverallStats other) {
+        add(other.count, other.sum, other.mean, other.m2, other.min, other.max);
+    }
+
+    // Statistics of one grade list in a single Welford pass.
+    static OverallStats of(GradeList grades) {
+        OverallStats st = new OverallStats();
+        for (int i = 0; i < grades.size(); i++) {
+            double g = grades.get(i);
+            st.sum += g;
+            st.min = Math.min(st.min, g);
+            st.max = Math.max(st.max, g);
+            double delta = g - st.mean;
+            st.mean += delta / (i + 1);
+            st.m2 += delta * (g - st.mean);
+        }
+        st.count = grades.size();
+        return st;
+    }
+
+    // Raw accumulators for Student (infinite min/max and zero mean while empty).
+    double welfordMean() { return mean; }
+
+    double m2() { return m2; }
+
+    double min() { return min; }
+
+    double max() { return max; }
+
+    public long getCount() { return count; }
+
+    public double getSum() { return sum; }
+
+    public double getMean() { return count == 0 ? Double.NaN : sum / count; }
+
+    public double getHighest() { return count == 0 ? Double.NaN : max; }
+
+    public double getLowest() { return count == 0 ? Double.NaN : min; }
+
+    // Population variance of all grades.
+    public double getVariance() { return count == 0 ? Double.NaN : m2 / count; }
+
+    public double getStdDev() { return Math.sqrt(getVariance()); }
+}
+
+/*
+ AtomicGradeStats: count/sum/min/max/variance that many threads can update
+ without a lock. Count and sums are striped adders; min and max hold double
+ bits in an AtomicLong and are lowered/raised by CAS. Welford's update is
+ inherently sequential, so the variance comes from sums of deviations
+ around a fixed shift (the mean when the accumulators were created, else
+ the first grade), which keeps the cancellation small. Reads never block,
+ but while writers run the values may come from slightly different
+ moments.
+*/
+class AtomicGradeStats {
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    // Double bits of the shift; NaN until the first grade picks it.
+    private final AtomicLong shift;
+    private final DoubleAdder shifted = new DoubleAdder();
+    private final DoubleAdder shiftedSquares = new DoubleAdder();
+    private final AtomicLong min;
+    private final AtomicLong max;
+
+    AtomicGradeStats(long n, double s, double mean, double m2, double lo, double hi) {
+        count.add(n);
+        sum.add(s);
+        shift = new AtomicLong(Double.doubleToRawLongBits(n == 0 ? Double.NaN : mean));
+        shiftedSquares.add(m2);
+        min = new AtomicLong(Double.doubleToRawLongBits(lo));
+        max = new AtomicLong(Double.doubleToRawLongBits(hi));
+    }
+
+    void add(double g) {
+        count.increment();
+        sum.add(g);
+        long bits = shift.get();
+        if (Double.isNaN(Double.longBitsToDouble(bits))) {
+            shift.compareAndSet(bits, Double.doubleToRawLongBits(g));
+            bits = shift.get();
+        }
+        double d = g - Double.longBitsToDouble(bits);
+        shifted.add(d);
+        shiftedSquares.add(d * d);
+        long cur;
+        while (g < Double.longBitsToDouble(cur = min.get())) {
+            if (min.compareAndSet(cur, Double.doubleToRawLongBits(g))) break;
+        }
+        while (g > Double.longBitsToDouble(cur = max.get())) {
+            if (max.compareAndSet(cur, Double.doubleToRawLongBits(g))) break;
+        }
+    }
+
+    public long getCount() { return count.sum(); }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? Double.NaN : sum.sum() / n;
+    }
+
+    public double getHighest() {
+        return count.sum() == 0 ? Double.NaN : Double.longBitsToDouble(max.get());
+    }
+
+    public double getLowest() {
+        return count.sum() == 0 ? Double.NaN : Double.longBitsToDouble(min.get());
+    }
+
+    public double getVariance() {
+        long n = count.sum();
+        return n == 0 ? Double.NaN : m2(n) / n;
+    }
+
+    // Sum of squared deviations from the mean: S2 - S1^2 / n over the shifted values.
+    private double m2(long n) {
+        double s1 = shifted.sum();
+        return Math.max(0, shiftedSquares.sum() - s1 * s1 / n);
+    }
+
+    void addTo(OverallStats stats) {
+        long n = count.sum();
+        if (n == 0) return;
+        double s = sum.sum();
+        stats.add(n, s, s / n, m2(n), Double.longBitsToDouble(min.get()), Double.longBitsToDouble(max.get()));
+    }
+}
+
+/*
+ QuantileSketch: mergeable streaming quantile sketch (KLL). Items go into a
+ stack of compactors; level h holds items of weight 2^h. When a level fills
+ up it is sorted and every other item (random offset) is promoted, halving
+ its size. Capacities shrink by 2/3 per level below the top (to no less than
+ 8), so the sketch keeps O(k) items in total and its rank error falls as 1/k
+ (k = 200 stays within about 1-2%). Min and max are kept exactly.
+*/
+class QuantileSketch {
+    static final int DEFAULT_K = 200;
+    // Smallest compactor; below this the lowest levels would compact every few adds.
+    private static final int MIN_CAPACITY = 8;
+
+    private final int k;
+    private final Random coin = new Random(0x5eed);
+    private double[][] items = new double[1][];
+    private int[] sizes = new int[1];
+    // Capacity of each level, recomputed only when a level is added.
+    private int[] capacities = new int[1];
+    private int levels = 1;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < 8) throw new IllegalArgumentException("Sketch size must be at least 8");
+        this.k = k;
+        capacities[0] = k;
+        items[0] = new double[k];
+    }
+
+    public long getCount() { return count; }
+
+    public void add(double x) {
+        put(0, x);
+        count++;
+        min = Math.min(min, x);
+        max = Math.max(max, x);
+        // Compacting level h only feeds level h + 1, so stop at the first level with room.
+        for (int h = 0; h < levels && sizes[h] >= capacities[h]; h++) compact(h);
+    }
+
+    // Folds another sketch into this one; the result summarizes both streams.
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) put(h, other.items[h][i]);
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+    }
+
+    // Smallest retained item whose weighted rank reaches q * count.
+    public double quantile(double q) {
+        if (count == 0) return Double.NaN;
+        if (q <= 0) return min;
+        if (q >= 1) return max;
+        int total = 0;
+        for (int h = 0; h < levels; h++) total += sizes[h];
+        double[] values = new double[total];
+        long[] weights = new long[total];
+        Integer[] order = new Integer[total];
+        int n = 0;
+        for (int h = 0; h < levels; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = items[h][i];
+                weights[n] = 1L << h;
+                order[n] = n;
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        // Compaction conserves weight, so the retained items weigh exactly count.
+        double target = q * count;
+        long seen = 0;
+        for (int i : order) {
+            seen += weights[i];
+            if (seen >= target) return values[i];
+        }
+        return max;
+    }
+
+    private void put(int h, double x) {
+        while (h >= levels) addLevel();
+        if (sizes[h] == items[h].length) items[h] = Arrays.copyOf(items[h], Math.max(4, sizes[h] * 2));
+        items[h][sizes[h]++] = x;
+    }
+
+    private void addLevel() {
+        if (levels == items.length) {
+            items = Arrays.copyOf(items, levels * 2);
+            sizes = Arrays.copyOf(sizes, levels * 2);
+            capacities = Arrays.copyOf(capacities, levels * 2);
+        }
+        items[levels] = new double[4];
+        levels++;
+        double c = k;
+        for (int h = levels - 1; h >= 0; h--, c *= 2.0 / 3.0) {
+            capacities[h] = Math.max(MIN_CAPACITY, (int) Math.ceil(c));
+        }
+    }
+
+    private void compress() {
+        for (int h = 0; h < levels; h++) {
+            if (sizes[h] >= capacities[h]) compact(h);
+        }
+    }
+
+    private void compact(int h) {
+        double[] level = items[h];
+        int n = sizes[h];
+        Arrays.sort(level, 0, n);
+        // An odd item out stays behind so weights are conserved exactly.
+        int keep = n & 1;
+        for (int i = keep + (coin.nextBoolean() ? 1 : 0); i < n; i += 2) put(h + 1, level[i]);
+        sizes[h] = keep;
+    }
+}
+
+/*
+ GradeHistogram: grade counts over buckets [e0, e1), [e1, e2), ..., [e(m-1), em],
+ plus an underflow (below e0, or NaN) and an overflow (above em) count.
+ add/remove are O(1) for evenly spaced edges and a binary search otherwise.
+ Histograms with the same edges merge by adding counts, so an overall
+ distribution is the sum of per-student ones.
+*/
+class GradeHistogram {
+    private final double[] edges;
+    private final double width; // > 0 when the edges are evenly spaced
+    private final long[] counts; // [0] underflow, [1..m] buckets, [m+1] overflow
+
+    public GradeHistogram(double... edges) {
+        if (edges.length < 2) throw new IllegalArgumentException("Need at least two bucket edges");
+        for (int i = 1; i < edges.length; i++) {
+            if (!(edges[i] > edges[i - 1])) throw new IllegalArgumentException("Bucket edges must increase");
+        }
+        this.edges = edges.clone();
+        double w = (edges[edges.length - 1] - edges[0]) / (edges.length - 1);
+        boolean even = true;
+        for (int i = 0; i < edges.length && even; i++) even = edges[i] == edges[0] + i * w;
+        this.width = even ? w : 0;
+        this.counts = new long[edges.length + 1];
+    }
+
+    // Ten-point buckets 0-10, 10-20, ..., 90-100.
+    public static GradeHistogram tens() {
+        return new GradeHistogram(0, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100);
+    }
+
+    public GradeHistogram emptyCopy() {
+        return new GradeHistogram(edges);
+    }
+
+    public void add(double g) {
+        counts[index(g)]++;
+    }
+
+    public void remove(double g) {
+        counts[index(g)]--;
+    }
+
+    public void merge(GradeHistogram other) {
+        if (!Arrays.equals(edges, other.edges)) throw new IllegalArgumentException("Histograms have different buckets");
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+    }
+
+    public int bucketCount() { return edges.length - 1; }
+
+    // Count of bucket i, 0 <= i < bucketCount().
+    public long count(int i) { return counts[i + 1]; }
+
+    public long underflow() { return counts[0]; }
+
+    public long overflow() { return counts[counts.length - 1]; }
+
+    public long total() {
+        long t = 0;
+        for (long c : counts) t += c;
+        return t;
+    }
+
+    private int index(double g) {
+        int last = edges.length - 1;
+        if (!(g >= edges[0])) return 0;
+        if (g > edges[last]) return last + 1;
+        if (g == edges[last]) return last; // the top bucket includes its upper edge
+        int i;
+        if (width > 0) {
+            i = Math.min((int) ((g - edges[0]) / width), last - 1);
+            if (g < edges[i]) i--;
+            else if (g >= edges[i + 1]) i++;
+        } else {
+            i = Arrays.binarySearch(edges, g);
+            if (i < 0) i = -i - 2;
+        }
+        return i + 1;
+    }
+
+    // One line per bucket, highest first: range, count, percentage and a bar.
+    public String report() {
+        long total = total();
+        long peak = 1;
+        for (long c : counts) peak = Math.max(peak, c);
+        StringBuilder sb = new StringBuilder();
+        if (overflow() > 0) reportLine(sb, "> " + label(edges[edges.length - 1]), overflow(), total, peak);
+        for (int i = bucketCount() - 1; i >= 0; i--) {
+            reportLine(sb, label(edges[i]) + "-" + label(edges[i + 1]), count(i), total, peak);
+        }
+        if (underflow() > 0) reportLine(sb, "< " + label(edges[0]), underflow(), total, peak);
+        return sb.toString();
+    }
+
+    private static void reportLine(StringBuilder sb, String range, long c, long total, long peak) {
+        sb.append(String.format("%-11s %10d  %5.1f%%  ", range, c, total == 0 ? 0.0 : 100.0 * c / total));
+        for (long i = 0, n = c * 40 / peak; i < n; i++) sb.append('#');
+        sb.append(System.lineSeparator());
+    }
+
+    private static String label(double e) {
+        return e == Math.rint(e) && Math.abs(e) < 1e15 ? Long.toString((long) e) : String.format("%.2f", e);
+    }
+}
+
+/* CsvRowSink: receives one parsed CSV row (name plus its valid grades) */
+interface CsvRowSink {
+    void row(String name, GradeList grades);
+}
+
+/*
+ CsvGradeReader: streaming tokenizer for the name,grade,grade,... format.
+ Scans a char buffer in place instead of readLine + split + trim per token,
+ and parses plain decimal grades without building intermediate Strings.
+ Semantics match the original importer: lines are split on \n, \r or \r\n,
+ blank lines and lines made only of commas are skipped, the name and each
+ token are trimmed, and tokens Double.parseDouble rejects are dropped.
+*/
+class CsvGradeReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Powers of ten that are exact doubles, for the fast decimal path.
+    static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final char[] buf;
+    private char[] carry = new char[256];
+    private double parsed;
+
+    public CsvGradeReader() {
+        this(BUFFER_SIZE);
+    }
+
+    CsvGradeReader(int bufferSize) {
+        buf = new char[bufferSize];
+    }
+
+    // Reads every row from the reader into the sink; returns the number of rows.
+    public int read(Reader in, CsvRowSink sink) throws IOException {
+        int rows = 0;
+        int carryLen = 0;
+        boolean skipLF = false;
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) != -1) {
+            int lineStart = 0;
+            if (skipLF && buf[0] == '\n') lineStart = 1; // \r\n split across two reads
+            skipLF = false;
+            for (int i = lineStart; i < n; i++) {
+                char c = buf[i];
+                if (c != '\n' && c != '\r') continue;
+                if (carryLen > 0) {
+                    carryLen = append(carryLen, lineStart, i);
+                    if (parseLine(carry, 0, carryLen, sink)) rows++;
+                    carryLen = 0;
+                } else if (parseLine(buf, lineStart, i, sink)) {
+                    rows++;
+                }
+                if (c == '\r') {
+                    if (i + 1 < n) {
+                        if (buf[i + 1] == '\n') i++;
+                    } else {
+                        skipLF = true;
+                    }
+                }
+                lineStart = i + 1;
+            }
+            if (lineStart < n) {
+                carryLen = append(carryLen, lineStart, n);
+            }
+        }
+        if (carryLen > 0 && parseLine(carry, 0, carryLen, sink)) rows++;
+        return rows;
+    }
+
+    private int append(int carryLen, int from, int to) {
+        int len = to - from;
+        if (carryLen + len > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLen + len));
+        }
+        System.arraycopy(buf, from, carry, carryLen, len);
+        return carryLen + len;
+    }
+
+    private boolean parseLine(char[] b, int start, int end, CsvRowSink sink) {
+        boolean blank = true;
+        boolean onlyCommas = true;
+        int fields = 1;
+        for (int i = start; i < end; i++) {
+            char c = b[i];
+            if (c > ' ') blank = false;
+            if (c == ',') fields++;
+            else onlyCommas = false;
+        }
+        if (blank || onlyCommas) return false;
+
+        int comma = start;
+        while (comma < end && b[comma] != ',') comma++;
+        String name = new String(b, start, trimEnd(b, start, comma) - start).trim();
+
+        GradeList grades = new GradeList(fields - 1);
+        int tokenStart = comma + 1;
+        while (tokenStart <= end) {
+            int tokenEnd = tokenStart;
+            while (tokenEnd < end && b[tokenEnd] != ',') tokenEnd++;
+            int s = trimStart(b, tokenStart, tokenEnd);
+            int e = trimEnd(b, s, tokenEnd);
+            if (s < e && parseGrade(b, s, e)) grades.add(parsed);
+            tokenStart = tokenEnd + 1;
+        }
+        sink.row(name, grades);
+        return true;
+    }
+
+    private static int trimStart(char[] b, int s, int e) {
+        while (s < e && b[s] <= ' ') s++;
+        return s;
+    }
+
+    private static int trimEnd(char[] b, int s, int e) {
+        while (e > s && b[e - 1] <= ' ') e--;
+        return e;
+    }
+
+    /*
+     Fast path for [+-]digits[.digits] with at most 18 digits: the mantissa
+     and the power of ten are both exact doubles, so one division gives the
+     correctly rounded result, identical to Double.parseDouble. Anything else
+     (exponents, NaN, hex, suffixes, long mantissas) goes through
+     Double.parseDouble.
+    */
+    private boolean parseGrade(char[] b, int s, int e) {
+        int i = s;
+        boolean neg = false;
+        if (b[i] == '-' || b[i] == '+') {
+            neg = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < e; i++) {
+            char c = b[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction >= 0) fraction++;
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == e && digits > 0 && digits <= 18 && mantissa < (1L << 53)) {
+            double v = fraction > 0 ? mantissa / POW10[fraction] : mantissa;
+            parsed = neg ? -v : v;
+            return true;
+        }
+        try {
+            parsed = Double.parseDouble(new String(b, s, e - s));
+            return true;
+        } catch (NumberFormatException ex) {
+            return false; // skip invalid grade tokens
+        }
+    }
+}
+
+/*
+ MappedCsvReader: memory-mapped variant of CsvGradeReader.
+ Maps the file in windows (so files over 2 GB work), scans the bytes for
+ commas and line breaks directly and parses ASCII grades in place. Names are
+ decoded as UTF-8, the charset CsvGradeWriter writes and importCSV reads in
+ STREAM mode, so the rows are identical to CsvGradeReader's.
+*/
+class MappedCsvReader {
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    private final Charset charset = StandardCharsets.UTF_8;
+    private final long windowSize;
+    private byte[] scratch = new byte[64];
+    private double parsed;
+    private int rows;
+
+    public MappedCsvReader() {
+        this(WINDOW_SIZE);
+    }
+
+    MappedCsvReader(long windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    // Reads the rows in [from, to), which must start at a line start; returns the row count.
+    public int read(FileChannel ch, long from, long to, CsvRowSink sink) throws IOException {
+        rows = 0;
+        long pos = from;
+        long window = windowSize;
+        while (pos < to) {
+            long len = Math.min(window, to - pos);
+            boolean last = pos + len == to;
+            ByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            int consumed = scanWindow(b, (int) len, last, sink);
+            if (consumed == 0) {
+                // Not one complete line in the window: widen it and retry.
+                if (window >= Integer.MAX_VALUE) throw new IOException("CSV line longer than 2 GB at offset " + pos);
+                window = Math.min(window * 2, Integer.MAX_VALUE);
+                continue;
+            }
+            pos += consumed;
+            window = windowSize;
+        }
+        return rows;
+    }
+
+    // Returns how many bytes of complete lines were consumed from the window.
+    private int scanWindow(ByteBuffer b, int len, boolean last, CsvRowSink sink) {
+        int lineStart = 0;
+        for (int i = 0; i < len; i++) {
+            byte c = b.get(i);
+            if (c == '\n') {
+                parseLine(b, lineStart, i, sink);
+                lineStart = i + 1;
+            } else if (c == '\r') {
+                // A trailing \r may be the first half of a \r\n in the next window.
+                if (i + 1 == len && !last) break;
+                parseLine(b, lineStart, i, sink);
+                if (i + 1 < len && b.get(i + 1) == '\n') i++;
+                lineStart = i + 1;
+            }
+        }
+        if (last && lineStart < len) {
+            parseLine(b, lineStart, len, sink);
+            lineStart = len;
+        }
+        return lineStart;
+    }
+
+    private void parseLine(ByteBuffer b, int start, int end, CsvRowSink sink) {
+        boolean blank = true;
+        boolean onlyCommas = true;
+        int fields = 1;
+        for (int i = start; i < end; i++) {
+            byte c = b.get(i);
+            // Bytes are compared unsigned: multi-byte characters never trim.
+            if ((c & 0xff) > ' ') blank = false;
+            if (c == ',') fields++;
+            else onlyCommas = false;
+        }
+        if (blank || onlyCommas) return;
+
+        int comma = start;
+        while (comma < end && b.get(comma) != ',') comma++;
+        int ns = trimStart(b, start, comma);
+        String name = decode(b, ns, trimEnd(b, ns, comma));
+
+        GradeList grades = new GradeList(fields - 1);
+        int tokenStart = comma + 1;
+        while (tokenStart <= end) {
+            int tokenEnd = tokenStart;
+            while (tokenEnd < end && b.get(tokenEnd) != ',') tokenEnd++;
+            int s = trimStart(b, tokenStart, tokenEnd);
+            int e = trimEnd(b, s, tokenEnd);
+            if (s < e && parseGrade(b, s, e)) grades.add(parsed);
+            tokenStart = tokenEnd + 1;
+        }
+        sink.row(name, grades);
+        rows++;
+    }
+
+    private static int trimStart(ByteBuffer b, int s, int e) {
+        while (s < e && (b.get(s) & 0xff) <= ' ') s++;
+        return s;
+    }
+
+    private static int trimEnd(ByteBuffer b, int s, int e) {
+        while (e > s && (b.get(e - 1) & 0xff) <= ' ') e--;
+        return e;
+    }
+
+    private String decode(ByteBuffer b, int s, int e) {
+        int len = e - s;
+        if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length * 2)];
+        for (int i = 0; i < len; i++) scratch[i] = b.get(s + i);
+        return new String(scratch, 0, len, charset);
+    }
+
+    // Same fast path as CsvGradeReader.parseGrade, reading bytes.
+    private boolean parseGrade(ByteBuffer b, int s, int e) {
+        int i = s;
+        boolean neg = false;
+        byte first = b.get(i);
+        if (first == '-' || first == '+') {
+            neg = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < e; i++) {
+            byte c = b.get(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction >= 0) fraction++;
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == e && digits > 0 && digits <= 18 && mantissa < (1L << 53)) {
+            double v = fraction > 0 ? mantissa / CsvGradeReader.POW10[fraction] : mantissa;
+            parsed = neg ? -v : v;
+            return true;
+        }
+        try {
+            parsed = Double.parseDouble(decode(b, s, e));
+            return true;
+        } catch (NumberFormatException ex) {
+            return false; // skip invalid grade tokens
+        }
+    }
+}
+
+/*
+ ParallelCsvReader: splits the file into line-aligned chunks and parses them
+ with one MappedCsvReader per chunk on a thread pool. Rows are buffered per
+ chunk and handed to the sink in file order, so the sink sees exactly the
+ sequence a single MappedCsvReader would (and later duplicates still win).
+*/
+class ParallelCsvReader {
+    private static final long MIN_CHUNK = 1L << 20;
+
+    private final int threads;
+    private final long minChunk;
+
+    public ParallelCsvReader() {
+        this(Runtime.getRuntime().availableProcessors(), MIN_CHUNK);
+    }
+
+    ParallelCsvReader(int threads, long minChunk) {
+        this.threads = Math.max(1, threads);
+        this.minChunk = Math.max(1, minChunk);
+    }
+
+    // Reads every row into the sink; returns the number of rows.
+    public int read(FileChannel ch, CsvRowSink sink) throws IOException {
+        long[] bounds = chunkBounds(ch, ch.size());
+        int chunks = bounds.length - 1;
+        if (chunks == 1) return new MappedCsvReader().read(ch, 0, bounds[1], sink);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, chunks));
+        try {
+            List<Future<ChunkRows>> parts = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                long from = bounds[i];
+                long to = bounds[i + 1];
+                parts.add(pool.submit(() -> {
+                    ChunkRows rows = new ChunkRows();
+                    new MappedCsvReader().read(ch, from, to, rows);
+                    return rows;
+                }));
+            }
+            int count = 0;
+            for (int i = 0; i < chunks; i++) {
+                ChunkRows rows = parts.get(i).get();
+                parts.set(i, null); // let merged chunks be collected
+                count += rows.drainTo(sink);
+            }
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("CSV import interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     Chunk boundaries: 0, size, and roughly even cut points in between, each
+     moved forward to the next line start. A \r directly followed by \n is
+     not a line start, so a \r\n pair is never split between chunks.
+    */
+    long[] chunkBounds(FileChannel ch, long size) throws IOException {
+        int chunks = (int) Math.max(1, Math.min(threads * 4L, size / minChunk));
+        long[] bounds = new long[chunks + 1];
+        int n = 1;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (int i = 1; i < chunks; i++) {
+            long cut = nextLineStart(ch, Math.max(size / chunks * i, bounds[n - 1]), size, probe);
+            if (cut > bounds[n - 1] && cut < size) bounds[n++] = cut;
+        }
+        bounds[n++] = size;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    // First line start at or after pos (size if there is none).
+    private static long nextLineStart(FileChannel ch, long pos, long size, ByteBuffer probe) throws IOException {
+        if (pos == 0) return 0;
+        long at = pos - 1; // a line starts at pos if the byte before it ends a line
+        while (at < size) {
+            probe.clear();
+            int n = ch.read(probe, at);
+            if (n <= 0) return size;
+            for (int i = 0; i < n; i++) {
+                byte c = probe.get(i);
+                if (c == '\n') return at + i + 1;
+                if (c == '\r') {
+                    if (i + 1 < n) {
+                        if (probe.get(i + 1) != '\n') return at + i + 1;
+                    } else {
+                        probe.clear();
+                        probe.limit(1);
+                        if (ch.read(probe, at + n) <= 0 || probe.get(0) != '\n') return at + n;
+                    }
+                }
+            }
+            at += n;
+        }
+        return size;
+    }
+
+    // Rows of one chunk, held until the chunks before it are merged.
+    private static final class ChunkRows implements CsvRowSink {
+        private final ArrayList<String> names = new ArrayList<>();
+        private final ArrayList<GradeList> grades = new ArrayList<>();
+
+        @Override
+        public void row(String name, GradeList g) {
+            names.add(name);
+            grades.add(g);
+        }
+
+        int drainTo(CsvRowSink sink) {
+            for (int i = 0; i < names.size(); i++) sink.row(names.get(i), grades.get(i));
+            return names.size();
+        }
+    }
+}
+
+/*
+ CsvGradeWriter: buffered UTF-8 writer for the name,grade,grade,... format.
+ Encodes straight into one large byte buffer and drains it to an
+ OutputStream or a channel. Grades are written with the same text as
+ Double.toString, and lines end with System.lineSeparator(), so the bytes
+ match what PrintWriter.println produced on a UTF-8 platform.
+*/
+class CsvGradeWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] EOL = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final byte[] buf;
+    private int pos;
+
+    public CsvGradeWriter(OutputStream out) {
+        this(out, null, BUFFER_SIZE);
+    }
+
+    public CsvGradeWriter(WritableByteChannel channel) {
+        this(null, channel, BUFFER_SIZE);
+    }
+
+    CsvGradeWriter(OutputStream out, WritableByteChannel channel, int bufferSize) {
+        this.out = out;
+        this.channel = channel;
+        // Room for the longest Double.toString text and a line separator.
+        this.buf = new byte[Math.max(64, bufferSize)];
+    }
+
+    public void writeStudent(Student s) throws IOException {
+        writeName(s.getName());
+        for (int i = 0; i < s.getGradeCount(); i++) {
+            ensure(32);
+            buf[pos++] = ',';
+            writeGrade(s.getGrade(i));
+        }
+        ensure(EOL.length);
+        for (byte b : EOL) buf[pos++] = b;
+    }
+
+    private void writeName(String name) throws IOException {
+        int len = name.length();
+        for (int i = 0; i < len; i++) {
+            if (name.charAt(i) >= 0x80) {
+                write(name.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        int i = 0;
+        while (i < len) {
+            if (pos == buf.length) flushBuffer();
+            int n = Math.min(len - i, buf.length - pos);
+            for (int j = 0; j < n; j++) buf[pos++] = (byte) name.charAt(i++);
+        }
+    }
+
+    private void write(byte[] b) throws IOException {
+        int i = 0;
+        while (i < b.length) {
+            if (pos == buf.length) flushBuffer();
+            int n = Math.min(b.length - i, buf.length - pos);
+            System.arraycopy(b, i, buf, pos, n);
+            pos += n;
+            i += n;
+        }
+    }
+
+    /*
+     Fast path for grades with at most two decimals below one million: such a
+     value is the double nearest to k / 100, and Double.toString prints k / 100
+     with trailing zeros dropped (at least one fraction digit). Everything else
+     goes through Double.toString.
+    */
+    private void writeGrade(double g) {
+        double a = Math.abs(g);
+        if (a >= 0.01 && a < 1e6) {
+            long k = Math.round(a * 100);
+            if (k / 100.0 == a) {
+                if (g < 0) buf[pos++] = '-';
+                pos = writeDigits(k / 100, pos);
+                buf[pos++] = '.';
+                int frac = (int) (k % 100);
+                buf[pos++] = (byte) ('0' + frac / 10);
+                if (frac % 10 != 0) buf[pos++] = (byte) ('0' + frac % 10);
+                return;
+            }
+        }
+        String t = Double.toString(g);
+        for (int i = 0; i < t.length(); i++) buf[pos++] = (byte) t.charAt(i);
+    }
+
+    private int writeDigits(long v, int at) {
+        int len = 1;
+        for (long t = v; t >= 10; t /= 10) len++;
+        int end = at + len;
+        for (int i = end - 1; i >= at; i--) {
+            buf[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        return end;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (buf.length - pos < n) flushBuffer();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos == 0) return;
+        if (channel != null) {
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, pos);
+            while (bb.hasRemaining()) channel.write(bb);
+        } else {
+            out.write(buf, 0, pos);
+        }
+        pos = 0;
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        if (out != null) out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (channel != null) channel.close();
+            else out.close();
+        }
+    }
+}
+
+/*
+ GradeSnapshot: versioned binary save/load of a whole tracker over NIO channels.
+ Layout, all little-endian:
+   header   magic "SGTS" (int 0x53544753), version (int), student count (long)
+   student  name length (int), UTF-8 name bytes, grade count (int), raw doubles
+   trailer  CRC32C of every preceding byte (int)
+ Loading is bounded by channel bandwidth: grades are bulk-copied from the
+ buffer into each GradeList, nothing is parsed. Decoded students are held
+ back until the trailer checks out, so a corrupt file changes nothing.
+*/
+class GradeSnapshot {
+    static final int MAGIC = 0x53544753;
+    static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final ByteBuffer buf;
+    private final CRC32C crc = new CRC32C();
+    private int checked; // buf position up to which bytes are in the CRC
+
+    public GradeSnapshot() {
+        this(BUFFER_SIZE);
+    }
+
+    GradeSnapshot(int bufferSize) {
+        buf = ByteBuffer.allocate(Math.max(64, bufferSize)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void write(Collection<Student> students, WritableByteChannel ch) throws IOException {
+        buf.clear();
+        crc.reset();
+        buf.putInt(MAGIC).putInt(VERSION).putLong(students.size());
+        for (Student s : students) {
+            byte[] name = s.getName().getBytes(StandardCharsets.UTF_8);
+            room(ch, 4);
+            buf.putInt(name.length);
+            for (int i = 0; i < name.length; ) {
+                room(ch, 1);
+                int n = Math.min(name.length - i, buf.remaining());
+                buf.put(name, i, n);
+                i += n;
+            }
+            room(ch, 4);
+            buf.putInt(s.getGradeCount());
+            for (int i = 0; i < s.getGradeCount(); ) {
+                room(ch, 8);
+                DoubleBuffer d = buf.asDoubleBuffer();
+                int n = s.putGrades(d, i);
+                buf.position(buf.position() + n * 8);
+                i += n;
+            }
+        }
+        drain(ch);
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private void room(WritableByteChannel ch, int n) throws IOException {
+        if (buf.remaining() < n) drain(ch);
+    }
+
+    private void drain(WritableByteChannel ch) throws IOException {
+        buf.flip();
+        crc.update(buf.duplicate());
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    // Reads every student into the sink once the checksum matches; returns the number of students.
+    public int read(ReadableByteChannel ch, CsvRowSink sink) throws IOException {
+        buf.clear().flip();
+        crc.reset();
+        checked = 0;
+        need(ch, 16);
+        if (buf.getInt() != MAGIC) throw new IOException("Not a grade snapshot");
+        int version = buf.getInt();
+        if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+        long count = buf.getLong();
+        if (count < 0 || count > Integer.MAX_VALUE) throw new IOException("Corrupt snapshot: student count " + count);
+        // Lengths are checked against the file size before anything is allocated.
+        long limit = ch instanceof SeekableByteChannel ? ((SeekableByteChannel) ch).size() : Integer.MAX_VALUE;
+        byte[] name = new byte[64];
+        List<String> names = new ArrayList<>();
+        List<GradeList> lists = new ArrayList<>();
+        for (long k = 0; k < count; k++) {
+            need(ch, 4);
+            int len = buf.getInt();
+            if (len < 0 || len > limit) throw new IOException("Corrupt snapshot: name length " + len);
+            if (len > name.length) name = new byte[Math.max(len, name.length * 2)];
+            for (int i = 0; i < len; ) {
+                need(ch, 1);
+                int n = Math.min(len - i, buf.remaining());
+                buf.get(name, i, n);
+                i += n;
+            }
+            need(ch, 4);
+            int grades = buf.getInt();
+            if (grades < 0 || grades * 8L > limit) throw new IOException("Corrupt snapshot: grade count " + grades);
+            GradeList list = new GradeList(grades);
+            for (int left = grades; left > 0; ) {
+                need(ch, 8);
+                int n = Math.min(left, buf.remaining() / 8);
+                list.readFrom(buf.asDoubleBuffer(), n);
+                buf.position(buf.position() + n * 8);
+                left -= n;
+            }
+            names.add(new String(name, 0, len, StandardCharsets.UTF_8));
+            lists.add(list);
+        }
+        checksum(buf.position());
+        need(ch, 4);
+        int expected = buf.getInt();
+        if (expected != (int) crc.getValue()) throw new IOException("Snapshot checksum mismatch");
+        for (int i = 0; i < names.size(); i++) sink.row(names.get(i), lists.get(i));
+        return (int) count;
+    }
+
+    // Makes at least n unread bytes available, compacting and refilling the buffer.
+    private void need(ReadableByteChannel ch, int n) throws IOException {
+        if (buf.remaining() >= n) return;
+        checksum(buf.position());
+        buf.compact();
+        checked = 0;
+        while (buf.position() < n) {
+            if (ch.read(buf) < 0) {
+                throw new EOFException("Truncated snapshot");
+            }
+        }
+        buf.flip();
+    }
+
+    private void checksum(int upTo) {
+        ByteBuffer b = buf.duplicate();
+        b.limit(upTo).position(checked);
+        crc.update(b);
+        checked = upTo;
+    }
+}
+
+/*
+ WriteAheadLog: append-only log of tracker mutations, kept next to a snapshot.
+ A log directory holds snapshot-<n>.sgts and wal-<n>.log; the state is the
+ snapshot (absent for n = 0) plus every record in the log of the same
+ generation. Each record is framed as
+   payload length (int), CRC32C of the payload (int), payload
+ with the payload being a type byte, length-prefixed UTF-8 name and, for
+ one grade, the raw double or, for a list of them (ADD_GRADES, SET_GRADES),
+ a count and the raw doubles (all little-endian). Appends only encode into a
+ memory buffer; a flusher thread writes and fsyncs whatever has accumulated
+ every commit interval, so concurrent mutations share one fsync. sync()
+ forces everything appended so far to disk.
+
+ checkpoint() compacts: it writes snapshot-<n+1>, opens an empty wal-<n+1>,
+ renames the snapshot into place and only then drops generation n. A crash
+ at any point leaves one complete generation, and recovery truncates a torn
+ record at the end of the log.
+*/
+class WriteAheadLog implements Closeable {
+    static final byte ADD_STUDENT = 1;
+    static final byte ADD_GRADE = 2;
+    static final byte REMOVE_STUDENT = 3;
+    static final byte SET_GRADES = 4;
+    static final byte ADD_GRADES = 5;
+    private static final long COMPACT_BYTES = 64L << 20;
+
+    private final Path dir;
+    private final long commitMillis;
+    private final Object flushLock = new Object();
+    private final CRC32C crc = new CRC32C();
+    private FileChannel ch;
+    private long generation;
+    private ByteBuffer pending = newBuffer(1 << 16);
+    private ByteBuffer spare = newBuffer(1 << 16);
+    private volatile long logBytes;
+    private IOException failure;
+    private boolean closed;
+    private Thread flusher;
+
+    private WriteAheadLog(Path dir, long commitMillis) {
+        this.dir = dir;
+        this.commitMillis = commitMillis;
+    }
+
+    /*
+     Loads the newest complete generation in dir into the (empty) tracker,
+     deletes any other generation and opens the log for appending. With
+     commitMillis == 0 every append is synced before it returns.
+    */
+    static WriteAheadLog open(Path dir, long commitMillis, GradeTracker tracker) throws IOException {
+        Files.createDirectories(dir);
+        WriteAheadLog wal = new WriteAheadLog(dir, commitMillis);
+        wal.generation = wal.latestSnapshot();
+        Path snap = wal.snapshotPath(wal.generation);
+        if (Files.exists(snap)) {
+            try (FileChannel in = FileChannel.open(snap, StandardOpenOption.READ)) {
+                new GradeSnapshot().read(in, tracker::putImported);
+            }
+        }
+        wal.ch = FileChannel.open(wal.logPath(wal.generation), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        wal.logBytes = wal.replay(tracker);
+        wal.ch.truncate(wal.logBytes);
+        wal.ch.position(wal.logBytes);
+        wal.deleteOtherGenerations();
+        if (commitMillis > 0) {
+            wal.flusher = new Thread(wal::flushLoop, "grade-wal-flusher");
+            wal.flusher.setDaemon(true);
+            wal.flusher.start();
+        }
+        return wal;
+    }
+
+    private Path snapshotPath(long gen) { return dir.resolve("snapshot-" + gen + ".sgts"); }
+
+    private Path logPath(long gen) { return dir.resolve("wal-" + gen + ".log"); }
+
+    private long latestSnapshot() throws IOException {
+        long gen = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "snapshot-*.sgts")) {
+            for (Path f : files) {
+                String n = f.getFileName().toString();
+                try {
+                    gen = Math.max(gen, Long.parseLong(n.substring(9, n.length() - 5)));
+                } catch (NumberFormatException ex) {
+                    // not one of ours
+                }
+            }
+        }
+        return gen;
+    }
+
+    private void deleteOtherGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "{snapshot-*.sgts,snapshot-*.tmp,wal-*.log}")) {
+            for (Path f : files) {
+                if (!f.equals(snapshotPath(generation)) && !f.equals(logPath(generation))) Files.delete(f);
+            }
+        }
+    }
+
+    // Applies every intact record to the tracker; returns the length of the intact prefix.
+    private long replay(GradeTracker tracker) throws IOException {
+        long size = ch.size();
+        long pos = 0;
+        ByteBuffer head = newBuffer(8);
+        ByteBuffer body = newBuffer(1 << 16);
+        while (pos + 8 <= size) {
+            head.clear();
+            readFully(head, pos);
+            int len = head.getInt(0);
+            int sum = head.getInt(4);
+            if (len <= 0 || pos + 8 + len > size) break;
+            if (body.capacity() < len) body = newBuffer(len);
+            body.clear().limit(len);
+            readFully(body, pos + 8);
+            body.flip();
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != sum) break;
+            apply(body, tracker);
+            pos += 8 + len;
+        }
+        return pos;
+    }
+
+    private void readFully(ByteBuffer b, long at) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b, at + b.position()) < 0) throw new EOFException("Truncated log");
+        }
+    }
+
+    private static void apply(ByteBuffer b, GradeTracker tracker) {
+        byte type = b.get();
+        byte[] name = new byte[b.getInt()];
+        b.get(name);
+        String n = new String(name, StandardCharsets.UTF_8);
+        switch (type) {
+            case ADD_STUDENT:
+                tracker.addStudent(n);
+                break;
+            case REMOVE_STUDENT:
+                tracker.removeStudent(n);
+                break;
+            case ADD_GRADE: {
+                Student s = tracker.findStudentByName(n);
+                if (s != null) s.addGrade(b.getDouble());
+                break;
+            }
+            case SET_GRADES: {
+                Student s = tracker.findStudentByName(n);
+                int count = b.getInt();
+                GradeList grades = new GradeList(count);
+                grades.readFrom(b.asDoubleBuffer(), count);
+                if (s != null) s.replaceGrades(grades);
+                break;
+            }
+            case ADD_GRADES: {
+                Student s = tracker.findStudentByName(n);
+                int count = b.getInt();
+                GradeList grades = new GradeList(count);
+                grades.readFrom(b.asDoubleBuffer(), count);
+                if (s != null) s.addGrades(grades);
+                break;
+            }
+            default:
+                break; // unknown record types come from newer versions; skip them
+        }
+    }
+
+    void addStudent(String name) { append(ADD_STUDENT, name, null, 0); }
+
+    void removeStudent(String name) { append(REMOVE_STUDENT, name, null, 0); }
+
+    void addGrade(String name, double g) { append(ADD_GRADE, name, null, g); }
+
+    // One record for a whole batch of grades (see Student.addGrades), so one sync.
+    void addGrades(String name, GradeList grades) { append(ADD_GRADES, name, grades, 0); }
+
+    void setGrades(String name, GradeList grades) { append(SET_GRADES, name, grades, 0); }
+
+    private void append(byte type, String name, GradeList grades, double grade) {
+        byte[] n = name.getBytes(StandardCharsets.UTF_8);
+        int len = 1 + 4 + n.length + (type == ADD_GRADE ? 8 : 0)
+            + (grades != null ? 4 + grades.size() * 8 : 0);
+        synchronized (this) {
+            if (failure != null) throw new UncheckedIOException("Write-ahead log failed", failure);
+            if (closed) throw new IllegalStateException("Write-ahead log is closed");
+            if (pending.remaining() < 8 + len) {
+                pending = grow(pending, 8 + len);
+            }
+            int start = pending.position();
+            if (start == 0) notifyAll(); // wake the flusher
+            pending.position(start + 8);
+            pending.put(type).putInt(n.length).put(n);
+            if (type == ADD_GRADE) pending.putDouble(grade);
+            if (grades != null) {
+                pending.putInt(grades.size());
+                int done = 0;
+                while (done < grades.size()) {
+                    done += grades.writeTo(pending.asDoubleBuffer(), done);
+                }
+                pending.position(pending.position() + done * 8);
+            }
+            ByteBuffer payload = pending.duplicate();
+            payload.position(start + 8).limit(start + 8 + len);
+            crc.reset();
+            crc.update(payload);
+            pending.putInt(start, len).putInt(start + 4, (int) crc.getValue());
+        }
+        if (commitMillis == 0) {
+            try {
+                sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Write-ahead log failed", e);
+            }
+        }
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer grow(ByteBuffer b, int extra) {
+        ByteBuffer bigger = newBuffer(Math.max(b.capacity() * 2, b.position() + extra));
+        b.flip();
+        return bigger.put(b);
+    }
+
+    // Writes and fsyncs everything appended so far (one fsync for the whole batch).
+    public void sync() throws IOException {
+        synchronized (flushLock) {
+            ByteBuffer out;
+            synchronized (this) {
+                if (failure != null) throw failure;
+                if (pending.position() == 0) return;
+                out = pending;
+                pending = spare;
+                spare = out;
+            }
+            out.flip();
+            try {
+                logBytes += out.remaining();
+                while (out.hasRemaining()) ch.write(out);
+                ch.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+                throw e;
+            } finally {
+                out.clear();
+            }
+        }
+    }
+
+    /*
+     Sleeps until a record is appended, then waits one commit interval so the
+     records appended meanwhile join the same fsync. Uses wait/notify rather
+     than interrupts: interrupting a thread inside FileChannel I/O closes the
+     channel.
+    */
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!closed && pending.position() == 0) wait();
+                    if (!closed) wait(commitMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) return;
+            }
+            try {
+                sync();
+            } catch (IOException e) {
+                System.out.println("Error writing log: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    boolean compactionDue() {
+        return logBytes >= COMPACT_BYTES;
+    }
+
+    // Replaces the log with a snapshot of the given students (see class comment).
+    void checkpoint(Collection<Student> students) throws IOException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                sync();
+                long next = generation + 1;
+                Path tmp = dir.resolve("snapshot-" + next + ".tmp");
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    new GradeSnapshot().write(students, out);
+                    out.force(true);
+                }
+                FileChannel nextLog = FileChannel.open(logPath(next), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    nextLog.force(true);
+                    Files.move(tmp, snapshotPath(next), StandardCopyOption.ATOMIC_MOVE);
+                    syncDirectory();
+                } catch (IOException e) {
+                    nextLog.close();
+                    throw e;
+                }
+                ch.close();
+                ch = nextLog;
+                generation = next;
+                logBytes = 0;
+                deleteOtherGenerations();
+            }
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+            d.force(true);
+        } catch (IOException e) {
+            // not every platform can open a directory; the rename is still atomic
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            sync();
+        } finally {
+            ch.close();
+        }
+    }
+}
+
+/* RankMetric: per-student statistic used by topK/bottomK */
+enum RankMetric {
+    AVERAGE, HIGHEST, LOWEST;
+
+    double of(Student s) {
+        switch (this) {
+            case HIGHEST: return s.getHighest();
+            case LOWEST: return s.getLowest();
+            default: return s.getAverage();
+        }
+    }
+}
+
+/* ExportMode: how exportCSV writes the file */
+enum ExportMode {
+    STREAM, // CsvGradeWriter over a FileOutputStream
+    CHANNEL // CsvGradeWriter over a FileChannel
+}
+
+/* ImportMode: how importCSV reads the file */
+enum ImportMode {
+    STREAM,  // Reader-based CsvGradeReader
+    MAPPED,  // memory-mapped MappedCsvReader
+    PARALLEL // ParallelCsvReader, one MappedCsvReader per chunk
+}
+
+/*
+ GradeBatch: (name, grade) rows for GradeTracker.addGrades, kept in parallel
+ arrays so a batch of 100k rows boxes nothing.
+*/
+class GradeBatch {
+    private String[] names;
+    private double[] grades;
+    private int size;
+
+    public GradeBatch() {
+        this(16);
+    }
+
+    public GradeBatch(int capacity) {
+        names = new String[Math.max(1, capacity)];
+        grades = new double[names.length];
+    }
+
+    public GradeBatch add(String name, double grade) {
+        if (size == names.length) {
+            int cap = size + (size >> 1) + 1;
+            names = Arrays.copyOf(names, cap);
+            grades = Arrays.copyOf(grades, cap);
+        }
+        names[size] = name;
+        grades[size++] = grade;
+        return this;
+    }
+
+    public int size() { return size; }
+
+    public String name(int row) { return names[row]; }
+
+    public double grade(int row) { return grades[row]; }
+
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+    }
+
+    // Why a row cannot be applied, or null if it can.
+    static String validate(String name, double g) {
+        if (name == null || name.trim().isEmpty()) return "Name cannot be empty";
+        if (Double.isNaN(g)) return "Grade is not a number";
+        if (g < 0) return "Grade must be >= 0";
+        if (Double.isInfinite(g)) return "Grade must be finite";
+        return null;
+    }
+
+    /* A rejected row: its index in the batch, its values and the reason. */
+    static final class RowError {
+        final int row;
+        final String name;
+        final double grade;
+        final String message;
+
+        RowError(int row, String name, double grade, String message) {
+            this.row = row;
+            this.name = name;
+            this.grade = grade;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "Row " + row + " (" + name + ", " + grade + "): " + message;
+        }
+    }
+}
+
+/*
+ LatencyHistogram: log-linear histogram of nanosecond latencies in the style
+ of HdrHistogram. Values below 64 get a bucket each; above that every power
+ of two is split into 32 linear sub-buckets, so any recorded value is known
+ to within 1/32 (about 3%) across the whole long range. The bucket array is
+ allocated once, so record() never allocates.
+*/
+class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int BUCKETS = (64 - SUB_BITS - 1) * (1 << SUB_BITS) + (2 << SUB_BITS);
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long total;
+    private long max;
+
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts[index(v)]++;
+        count++;
+        total += v;
+        if (v > max) max = v;
+    }
+
+    public long count() { return count; }
+
+    public long max() { return max; }
+
+    public double mean() { return count == 0 ? Double.NaN : (double) total / count; }
+
+    // Upper bound of the bucket holding the q-th quantile (0 when empty).
+    public long quantile(double q) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, highest(i));
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    // Bucket m*32 + (v >>> m), m being how far v is shifted to fit in 6 bits.
+    private static int index(long v) {
+        int m = Math.max(0, 63 - Long.numberOfLeadingZeros(v) - SUB_BITS);
+        return (m << SUB_BITS) + (int) (v >>> m);
+    }
+
+    private static long highest(int i) {
+        int m = Math.max(0, (i >> SUB_BITS) - 1);
+        long sub = i - (m << SUB_BITS);
+        return ((sub + 1) << m) - 1;
+    }
+}
+
+/*
+ TrackerMetrics: counters and latency histograms for the tracker's hot paths,
+ plus gauges read from the tracker when a snapshot is taken. A tracker only
+ holds one while metrics are enabled (GradeTracker.enableMetrics), so with
+ metrics off every instrumented call pays a single null check. Recording is
+ allocation-free; like GradeTracker itself it is not thread-safe.
+*/
+class TrackerMetrics {
+    enum Op {
+        LOOKUP, INSERT, REMOVE, GRADE, BATCH, IMPORT, EXPORT;
+
+        String label() { return name().toLowerCase(); }
+    }
+
+    private static final Op[] OPS = Op.values();
+
+    private final GradeTracker tracker;
+    private final long[] failures = new long[OPS.length];
+    private final LatencyHistogram[] latency = new LatencyHistogram[OPS.length];
+
+    TrackerMetrics(GradeTracker tracker) {
+        this.tracker = tracker;
+        for (int i = 0; i < OPS.length; i++) latency[i] = new LatencyHistogram();
+    }
+
+    // Records one operation started at t0 (System.nanoTime); ok = false counts it as a failure.
+    void record(Op op, long t0, boolean ok) {
+        latency[op.ordinal()].record(System.nanoTime() - t0);
+        if (!ok) failures[op.ordinal()]++;
+    }
+
+    public long count(Op op) { return latency[op.ordinal()].count(); }
+
+    public long failures(Op op) { return failures[op.ordinal()]; }
+
+    public LatencyHistogram latency(Op op) { return latency[op.ordinal()]; }
+
+    public void reset() {
+        Arrays.fill(failures, 0);
+        for (LatencyHistogram h : latency) h.reset();
+    }
+
+    // One line per operation (latencies in microseconds), then the gauges.
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        String nl = System.lineSeparator();
+        sb.append(String.format("%-8s %10s %8s %10s %10s %10s %10s %10s", "op", "count", "failed",
+            "mean us", "p50 us", "p90 us", "p99 us", "max us")).append(nl);
+        for (Op op : OPS) {
+            LatencyHistogram h = latency(op);
+            sb.append(String.format("%-8s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f", op.label(), h.count(),
+                failures(op), h.count() == 0 ? 0.0 : h.mean() / 1e3, h.quantile(0.5) / 1e3,
+                h.quantile(0.9) / 1e3, h.quantile(0.99) / 1e3, h.max() / 1e3)).append(nl);
+        }
+        sb.append("students       : ").append(tracker.studentCount()).append(nl);
+        sb.append("grades         : ").append(tracker.gradeCount()).append(nl);
+        sb.append("tracker heap   : ~").append(tracker.estimatedHeapBytes() / 1024).append(" KB").append(nl);
+        Runtime rt = Runtime.getRuntime();
+        sb.append("JVM heap used  : ").append((rt.totalMemory() - rt.freeMemory()) / 1024).append(" KB").append(nl);
+        return sb.toString();
+    }
+
+    // Same content as toText, latencies in nanoseconds.
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\n  \"operations\": {\n");
+        for (int i = 0; i < OPS.length; i++) {
+            LatencyHistogram h = latency[i];
+            sb.append("    \"").append(OPS[i].label()).append("\": { \"count\": ").append(h.count())
+                .append(", \"failed\": ").append(failures[i])
+                .append(", \"meanNanos\": ").append(h.count() == 0 ? 0 : Math.round(h.mean()))
+                .append(", \"p50Nanos\": ").append(h.quantile(0.5))
+                .append(", \"p90Nanos\": ").append(h.quantile(0.9))
+                .append(", \"p99Nanos\": ").append(h.quantile(0.99))
+                .append(", \"maxNanos\": ").append(h.max())
+                .append(" }").append(i + 1 < OPS.length ? ",\n" : "\n");
+        }
+        Runtime rt = Runtime.getRuntime();
+        sb.append("  },\n  \"gauges\": {\n");
+        sb.append("    \"students\": ").append(tracker.studentCount()).append(",\n");
+        sb.append("    \"grades\": ").append(tracker.gradeCount()).append(",\n");
+        sb.append("    \"trackerHeapBytes\": ").append(tracker.estimatedHeapBytes()).append(",\n");
+        sb.append("    \"jvmHeapUsedBytes\": ").append(rt.totalMemory() - rt.freeMemory()).append("\n");
+        return sb.append("  }\n}\n").toString();
+    }
+}
+
+/* GradeTracker manager */
+class GradeTracker {
+    // Keyed by folded name (see key()); insertion order is kept for export.
+    private final Map<String, Student> students = new LinkedHashMap<>();
+    // Same students ordered by folded name, kept in step with `students`.
+    private final TreeMap<String, Student> sorted = new TreeMap<>();
+    // Total grades, and a quantile sketch fed by every grade as it arrives.
+    // Removing or replacing grades cannot be undone in a sketch, so it is
+    // then marked stale and rebuilt by the next quantile query.
+    private long gradeCount;
+    private int sketchK = QuantileSketch.DEFAULT_K;
+    private int exactQuantileLimit = 1 << 16;
+    private QuantileSketch sketch = new QuantileSketch();
+    private boolean sketchStale;
+    // Overall grade distribution, kept exact on every add, replace and remove.
+    private GradeHistogram histogram = GradeHistogram.tens();
+    // From `benchmark aggregate`: copying the roster out of the map costs 45-60 ns a
+    // student against 45-80 ns for the whole sequential pass, so the split only wins
+    // once the pass is cache-missing (~1M students) and has several workers.
+    private int parallelThreshold = 1_000_000;
+    // Write-ahead log receiving every mutation, or null when not durable.
+    private WriteAheadLog log;
+    // Operation counters and latencies, or null while metrics are disabled.
+    // Package-private so Student.addGrade can time grade appends.
+    TrackerMetrics metrics;
+
+    /*
+     Folds a name the same way String.equalsIgnoreCase compares it, so a
+     hash lookup on the folded key matches exactly what the old linear
+     equalsIgnoreCase scan matched.
+    */
+    static String key(String name) {
+        return fold(name.trim());
+    }
+
+    // Case-folds without trimming (prefix and range bounds keep their spaces).
+    static String fold(String t) {
+        char[] folded = null;
+        for (int i = 0; i < t.length(); i++) {
+            char c = t.charAt(i);
+            char f = Character.toLowerCase(Character.toUpperCase(c));
+            if (f != c) {
+                if (folded == null) folded = t.toCharArray();
+                folded[i] = f;
+            }
+        }
+        return folded == null ? t : new String(folded);
+    }
+
+    public void addStudent(String name) {
+        TrackerMetrics m = metrics;
+        long t0 = m == null ? 0 : System.nanoTime();
+        String k = key(name);
+        if (students.containsKey(k)) {
+            System.out.println("Student already exists. Use a different name or update existing.");
+            if (m != null) m.record(TrackerMetrics.Op.INSERT, t0, false);
+            return;
+        }
+        Student s = register(k, name);
+        if (log != null) log.addStudent(s.getName());
+        if (m != null) m.record(TrackerMetrics.Op.INSERT, t0, true);
+    }
+
+    public boolean removeStudent(String name) {
+        TrackerMetrics m = metrics;
+        long t0 = m == null ? 0 : System.nanoTime();
+        boolean removed = remove(name);
+        if (m != null) m.record(TrackerMetrics.Op.REMOVE, t0, removed);
+        return removed;
+    }
+
+    private boolean remove(String name) {
+        String k = key(name);
+        Student s = students.remove(k);
+        if (s == null) return false;
+        sorted.remove(k);
+        s.owner = null;
+        gradeCount -= s.getGradeCount();
+        if (s.getGradeCount() > 0) sketchStale = true;
+        s.forEachGrade(histogram::remove);
+        s.log = null;
+        if (log != null) log.removeStudent(s.getName());
+        return true;
+    }
+
+    private Student newStudent(String name) {
+        Student s = new Student(name);
+        s.log = log;
+        s.owner = this;
+        return s;
+    }
+
+    // Called by Student.addGrade on students of this tracker.
+    void gradeAdded(double g) {
+        gradeCount++;
+        if (!sketchStale) sketch.add(g);
+        histogram.add(g);
+    }
+
+    // Called by Student.addGrades on students of this tracker.
+    void gradesAppended(GradeList batch) {
+        gradeCount += batch.size();
+        if (!sketchStale) batch.forEach(sketch::add);
+        batch.forEach(histogram::add);
+    }
+
+    // Called by Student.replaceGrades on students of this tracker.
+    void gradesReplaced(GradeList old, GradeList grades) {
+        gradeCount += grades.size() - old.size();
+        if (!old.isEmpty()) sketchStale = true;
+        if (!sketchStale) grades.forEach(sketch::add);
+        old.forEach(histogram::remove);
+        grades.forEach(histogram::add);
+    }
+
+    public long gradeCount() {
+        return gradeCount;
+    }
+
+    /*
+     Sets the sketch size k (memory O(k), rank error falling as 1/k) and the
+     number of grades up to which quantile() is computed exactly instead.
+    */
+    public void configureQuantiles(int sketchK, int exactLimit) {
+        this.sketchK = sketchK;
+        this.exactQuantileLimit = exactLimit;
+        sketch = new QuantileSketch(sketchK);
+        sketchStale = true;
+    }
+
+    /*
+     The q-quantile (0..1) of every grade in the tracker. Up to the exact
+     limit it sorts a copy and interpolates between the closest ranks;
+     beyond that it reads the streaming sketch. NaN if there are no grades.
+    */
+    public double quantile(double q) {
+        if (gradeCount == 0) return Double.NaN;
+        if (gradeCount <= exactQuantileLimit) return exactQuantile(q);
+        if (sketchStale) {
+            QuantileSketch fresh = new QuantileSketch(sketchK);
+            for (Student s : students.values()) s.forEachGrade(fresh::add);
+            sketch = fresh;
+            sketchStale = false;
+        }
+        return sketch.quantile(q);
+    }
+
+    public double median() {
+        return quantile(0.5);
+    }
+
+    // Switches the overall histogram to the given bucket edges, rebuilding it in one pass.
+    public void configureHistogram(double... edges) {
+        GradeHistogram h = new GradeHistogram(edges);
+        for (Student s : students.values()) s.forEachGrade(h::add);
+        histogram = h;
+    }
+
+    // Copy of the overall grade distribution.
+    public GradeHistogram histogram() {
+        GradeHistogram h = histogram.emptyCopy();
+        h.merge(histogram);
+        return h;
+    }
+
+    // One student's distribution over the same buckets, or null if there is no such student.
+    public GradeHistogram histogram(String name) {
+        Student s = findStudentByName(name);
+        return s == null ? null : s.histogram(histogram);
+    }
+
+    private double exactQuantile(double q) {
+        double[] all = new double[(int) gradeCount];
+        int n = 0;
+        for (Student s : students.values()) {
+            for (int i = 0; i < s.getGradeCount(); i++) all[n++] = s.getGrade(i);
+        }
+        Arrays.sort(all);
+        double pos = Math.max(0, Math.min(1, q)) * (n - 1);
+        int lo = (int) pos;
+        if (lo + 1 >= n) return all[n - 1];
+        return all[lo] + (pos - lo) * (all[lo + 1] - all[lo]);
+    }
+
+    /*
+     Recovers the tracker from the log directory (snapshot plus log replay)
+     and from then on appends every mutation to it, group-committing every
+     commitMillis (0 syncs each mutation). The tracker must be empty.
+    */
+    public boolean openLog(String dir, long commitMillis) {
+        if (log != null || !students.isEmpty()) {
+            throw new IllegalStateException("openLog needs an empty tracker without a log");
+        }
+        long start = System.nanoTime();
+        try {
+            log = WriteAheadLog.open(Paths.get(dir), commitMillis, this);
+        } catch (IOException e) {
+            students.clear();
+            sorted.clear();
+            gradeCount = 0;
+            sketch = new QuantileSketch(sketchK);
+            sketchStale = false;
+            histogram = histogram.emptyCopy();
+            System.out.println("Error opening log: " + e.getMessage());
+            return false;
+        }
+        for (Student s : students.values()) s.log = log;
+        System.out.println("Recovered " + students.size() + " students from " + dir
+            + " (" + rate(students.size(), start) + ").");
+        return true;
+    }
 
-    public Student(String name) {
-        this.name = name.trim();
-        this.grades = new ArrayList<>();
+    // Forces every logged mutation to disk.
+    public boolean syncLog() {
+        if (log == null) return true;
+        try {
+            log.sync();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error writing log: " + e.getMessage());
+            return false;
+        }
     }
 
-    public String getName() { return name; }
+    // Compacts the log into a snapshot of the current state.
+    public boolean checkpoint() {
+        if (log == null) return true;
+        try {
+            log.checkpoint(students.values());
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error writing checkpoint: " + e.getMessage());
+            return false;
+        }
+    }
 
-    public void addGrade(double g) {
-        if (g < 0) throw new IllegalArgumentException("Grade cannot be negative");
-        grades.add(g);
+    // Periodic compaction: checkpoints once the log has grown past its limit.
+    public void maybeCheckpoint() {
+        if (log != null && log.compactionDue()) checkpoint();
     }
 
-    public void setGrades(ArrayList<Double> newGrades) {
-        grades = new ArrayList<>(newGrades);
+    public void closeLog() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.out.println("Error closing log: " + e.getMessage());
+        }
+        for (Student s : students.values()) s.log = null;
+        log = null;
     }
 
-    public ArrayList<Double> getGrades() {
-        return new ArrayList<>(grades);
+    public Student findStudentByName(String name) {
+        TrackerMetrics m = metrics;
+        if (m == null) return students.get(key(name));
+        long t0 = System.nanoTime();
+        Student s = students.get(key(name));
+        m.record(TrackerMetrics.Op.LOOKUP, t0, s != null);
+        return s;
     }
 
-    public double getAverage() {
-        if (grades.isEmpty()) return Double.NaN;
-        double sum = 0;
-        for (double d : grades) sum += d;
-        return sum / grades.size();
+    public int studentCount() {
+        return students.size();
     }
 
-    public double getHighest() {
-        if (grades.isEmpty()) return Double.NaN;
-        return grades.stream().mapToDouble(Double::doubleValue).max().orElse(Double.NaN);
+    // Starts recording operation metrics (no-op if already enabled) and returns them.
+    public TrackerMetrics enableMetrics() {
+        if (metrics == null) metrics = new TrackerMetrics(this);
+        return metrics;
     }
 
-    public double getLowest() {
-        if (grades.isEmpty()) return Double.NaN;
-        return grades.stream().mapToDouble(Double::doubleValue).min().orElse(Double.NaN);
+    public void disableMetrics() {
+        metrics = null;
     }
 
-    @Override
-    public String toString() {
-        if (grades.isEmpty()) {
-            return String.format("%s: No grades", name);
-        } else {
-            return String.format("%s | Grades: %s | Avg: %.2f | High: %.2f | Low: %.2f",
-                name, grades.toString(), getAverage(), getHighest(), getLowest());
+    // Current metrics, or null while disabled.
+    public TrackerMetrics metrics() {
+        return metrics;
+    }
+
+    /*
+     Rough retained size of the roster: a fixed per-student cost (Student,
+     GradeList, both index entries and String headers), the name and its
+     folded key, and each grade array at its full capacity. Walks every
+     student, so it is meant for snapshots, not hot paths.
+    */
+    public long estimatedHeapBytes() {
+        long bytes = 0;
+        for (Student s : students.values()) {
+            bytes += 240 + 2L * s.getName().length() + 16 + 8L * s.gradeCapacity();
         }
+        return bytes;
     }
-}
 
-/* GradeTracker manager */
-class GradeTracker {
-    private ArrayList<Student> students = new ArrayList<>();
+    // Read-only view in insertion order.
+    Collection<Student> allStudents() {
+        return Collections.unmodifiableCollection(students.values());
+    }
 
-    public void addStudent(String name) {
-        if (findStudentByName(name) != null) {
-            System.out.println("Student already exists. Use a different name or update existing.");
-            return;
-        }
-        students.add(new Student(name));
+    /*
+     One pass over the students, reading each one's running statistics.
+     From parallelThreshold students up, and only when the fork-join common
+     pool has more than one worker, the pass is split across the pool
+     instead (see overallStatsParallel); with a single worker the copy it
+     needs is pure overhead.
+    */
+    public OverallStats overallStats() {
+        return students.size() >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1
+            ? overallStatsParallel() : overallStatsSequential();
     }
 
-    public boolean removeStudent(String name) {
-        Student s = findStudentByName(name);
-        if (s != null) {
-            students.remove(s);
-            return true;
+    OverallStats overallStatsSequential() {
+        OverallStats stats = new OverallStats();
+        for (Student s : students.values()) {
+            s.addTo(stats);
         }
-        return false;
+        return stats;
     }
 
-    public Student findStudentByName(String name) {
-        for (Student s : students) {
-            if (s.getName().equalsIgnoreCase(name.trim())) return s;
+    // Same students in the same order as the sequential pass, copied to an array and split by StatsTask.
+    OverallStats overallStatsParallel() {
+        Student[] roster = students.values().toArray(new Student[0]);
+        return ForkJoinPool.commonPool().invoke(new StatsTask(roster, 0, roster.length));
+    }
+
+    // Halves its slice until it is at most LEAF students, then sums them; partials merge with Chan's update.
+    private static final class StatsTask extends RecursiveTask<OverallStats> {
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF = 8192;
+        private final Student[] roster;
+        private final int from;
+        private final int to;
+
+        StatsTask(Student[] roster, int from, int to) {
+            this.roster = roster;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected OverallStats compute() {
+            if (to - from <= LEAF) {
+                OverallStats stats = new OverallStats();
+                for (int i = from; i < to; i++) roster[i].addTo(stats);
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            StatsTask left = new StatsTask(roster, from, mid);
+            left.fork();
+            OverallStats stats = new StatsTask(roster, mid, to).compute();
+            stats.merge(left.join());
+            return stats;
         }
-        return null;
+    }
+
+    // Roster size from which overallStats() aggregates in parallel.
+    public void setParallelThreshold(int students) {
+        parallelThreshold = Math.max(1, students);
     }
 
     public double overallAverage() {
-        DoubleStream all = students.stream()
-            .flatMapToDouble(s -> s.getGrades().stream().mapToDouble(Double::doubleValue));
-        OptionalDouble od = all.average();
-        return od.isPresent() ? od.getAsDouble() : Double.NaN;
+        return overallStats().getMean();
     }
 
     public double overallHighest() {
-        return students.stream()
-            .flatMapToDouble(s -> s.getGrades().stream().mapToDouble(Double::doubleValue))
-            .max()
-            .orElse(Double.NaN);
+        return overallStats().getHighest();
     }
 
     public double overallLowest() {
-        return students.stream()
-            .flatMapToDouble(s -> s.getGrades().stream().mapToDouble(Double::doubleValue))
-            .min()
-            .orElse(Double.NaN);
+        return overallStats().getLowest();
+    }
+
+    public double overallStdDev() {
+        return overallStats().getStdDev();
     }
 
+    // Lists every student in name order, through one buffer flushed at the end.
     public void printAllStudents() {
+        PrintWriter out = consoleWriter();
+        printAllStudents(out);
+        out.flush();
+    }
+
+    // Lines are rendered into one reused StringBuilder and copied out in 32 KB chunks.
+    void printAllStudents(PrintWriter out) {
         if (students.isEmpty()) {
-            System.out.println("No students in the tracker yet.");
+            out.println("No students in the tracker yet.");
             return;
         }
-        students.sort(Comparator.comparing(Student::getName, String.CASE_INSENSITIVE_ORDER));
-        for (Student s : students) {
-            System.out.println(s.toString());
+        String nl = System.lineSeparator();
+        StringBuilder sb = new StringBuilder(1 << 16);
+        char[] chunk = new char[1 << 16];
+        for (Student s : sorted.values()) {
+            s.appendTo(sb).append(nl);
+            if (sb.length() >= 1 << 15) chunk = drain(sb, chunk, out);
         }
+        drain(sb, chunk, out);
+    }
+
+    // Writes sb to out without making a String and empties it; returns the (maybe grown) chunk.
+    static char[] drain(StringBuilder sb, char[] chunk, PrintWriter out) {
+        if (chunk.length < sb.length()) chunk = new char[sb.length()];
+        sb.getChars(0, sb.length(), chunk, 0);
+        out.write(chunk, 0, sb.length());
+        sb.setLength(0);
+        return chunk;
+    }
+
+    /*
+     A 64 KB buffered writer over System.out for reports. System.out is
+     synchronized and flushes on every println; this only writes when the
+     buffer fills and when the caller flushes it (once, at the end). Each
+     chunk goes to System.out as text, so System.out's own charset does the
+     encoding. Its flush hands the text over without flushing System.out
+     itself: the console stream flushes on write anyway, and the batch-mode
+     stream is left to flush once when the batch ends. It is never closed,
+     which would close System.out.
+    */
+    static PrintWriter consoleWriter() {
+        Writer console = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                System.out.print(String.valueOf(cbuf, off, len));
+            }
+
+            @Override
+            public void flush() {
+                // see above
+            }
+
+            @Override
+            public void close() {
+                // see above
+            }
+        };
+        return new PrintWriter(new BufferedWriter(console, 1 << 16));
+    }
+
+    /*
+     Read-only views in case-insensitive name order, walked straight off the
+     sorted index. Folded keys compare like String.CASE_INSENSITIVE_ORDER on
+     the names (for characters outside the surrogate range).
+    */
+    Collection<Student> sortedStudents() {
+        return Collections.unmodifiableCollection(sorted.values());
+    }
+
+    // Students whose name starts with prefix, ignoring case.
+    public Collection<Student> studentsWithPrefix(String prefix) {
+        String lo = fold(prefix);
+        String hi = prefixEnd(lo);
+        SortedMap<String, Student> range = hi == null ? sorted.tailMap(lo) : sorted.subMap(lo, hi);
+        return Collections.unmodifiableCollection(range.values());
+    }
+
+    // Students from `from` up to and including every name starting with `to`, e.g. "A".."C".
+    public Collection<Student> studentsInRange(String from, String to) {
+        String lo = fold(from);
+        String hi = prefixEnd(fold(to));
+        if (hi != null && lo.compareTo(hi) >= 0) return Collections.emptyList();
+        SortedMap<String, Student> range = hi == null ? sorted.tailMap(lo) : sorted.subMap(lo, hi);
+        return Collections.unmodifiableCollection(range.values());
+    }
+
+    // Smallest key greater than every key starting with prefix, or null if unbounded.
+    private static String prefixEnd(String prefix) {
+        int i = prefix.length() - 1;
+        while (i >= 0 && prefix.charAt(i) == Character.MAX_VALUE) i--;
+        if (i < 0) return null;
+        return prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
     }
 
     // CSV format: name,grade1,grade2,...
     public boolean exportCSV(String filename) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(filename))) {
-            for (Student s : students) {
-                StringBuilder sb = new StringBuilder();
-                sb.append(s.getName());
-                for (Double g : s.getGrades()) {
-                    sb.append(",").append(g);
-                }
-                pw.println(sb.toString());
+        return exportCSV(filename, ExportMode.STREAM);
+    }
+
+    public boolean exportCSV(String filename, ExportMode mode) {
+        TrackerMetrics m = metrics;
+        long t0 = m == null ? 0 : System.nanoTime();
+        boolean ok = export(filename, mode);
+        if (m != null) m.record(TrackerMetrics.Op.EXPORT, t0, ok);
+        return ok;
+    }
+
+    private boolean export(String filename, ExportMode mode) {
+        try (CsvGradeWriter w = mode == ExportMode.CHANNEL
+                ? new CsvGradeWriter(FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))
+                : new CsvGradeWriter(new FileOutputStream(filename))) {
+            for (Student s : students.values()) {
+                w.writeStudent(s);
             }
             return true;
         } catch (IOException e) {
@@ -149,42 +2622,307 @@ class GradeTracker {
     }
 
     public boolean importCSV(String filename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            int count = 0;
-            while ((line = br.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-                String[] parts = line.split(",");
-                if (parts.length < 1) continue;
-                String name = parts[0].trim();
-                Student s = findStudentByName(name);
-                if (s == null) {
-                    s = new Student(name);
-                    students.add(s);
+        return importCSV(filename, ImportMode.STREAM);
+    }
+
+    public boolean importCSV(String filename, ImportMode mode) {
+        TrackerMetrics m = metrics;
+        long t0 = m == null ? 0 : System.nanoTime();
+        boolean ok = importFrom(filename, mode);
+        if (m != null) m.record(TrackerMetrics.Op.IMPORT, t0, ok);
+        return ok;
+    }
+
+    private boolean importFrom(String filename, ImportMode mode) {
+        long start = System.nanoTime();
+        int count;
+        try {
+            if (mode == ImportMode.MAPPED) {
+                try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+                    count = new MappedCsvReader().read(ch, 0, ch.size(), this::putImported);
                 }
-                ArrayList<Double> grades = new ArrayList<>();
-                for (int i = 1; i < parts.length; i++) {
-                    try {
-                        double g = Double.parseDouble(parts[i].trim());
-                        grades.add(g);
-                    } catch (NumberFormatException ex) {
-                        // skip invalid grade tokens
-                    }
+            } else if (mode == ImportMode.PARALLEL) {
+                try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+                    count = new ParallelCsvReader().read(ch, this::putImported);
+                }
+            } else {
+                try (Reader in = new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8)) {
+                    count = new CsvGradeReader().read(in, this::putImported);
                 }
-                s.setGrades(grades);
-                count++;
             }
-            System.out.println("Imported " + count + " lines from CSV.");
-            return true;
+            System.out.println("Imported " + count + " lines from CSV (" + rate(count, start) + ").");
+            // Imported rows are not logged one by one; a checkpoint makes them durable.
+            return checkpoint();
         } catch (IOException e) {
             System.out.println("Error importing CSV: " + e.getMessage());
+            checkpoint(); // keep whatever rows were merged before the error
+            return false;
+        }
+    }
+
+    public boolean saveSnapshot(String filename) {
+        try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            new GradeSnapshot().write(students.values(), ch);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error saving snapshot: " + e.getMessage());
             return false;
         }
     }
 
+    // Same merge as importCSV: loaded students replace the grades of existing ones.
+    public boolean loadSnapshot(String filename) {
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            int count = new GradeSnapshot().read(ch, this::putImported);
+            System.out.println("Loaded " + count + " students from snapshot (" + rate(count, start) + ").");
+            return checkpoint();
+        } catch (IOException e) {
+            System.out.println("Error loading snapshot: " + e.getMessage());
+            return false; // nothing was merged: read() only delivers a verified snapshot
+        }
+    }
+
+    public static boolean csvToSnapshot(String csvFile, String snapshotFile) {
+        GradeTracker t = new GradeTracker();
+        return t.importCSV(csvFile) && t.saveSnapshot(snapshotFile);
+    }
+
+    public static boolean snapshotToCsv(String snapshotFile, String csvFile) {
+        GradeTracker t = new GradeTracker();
+        return t.loadSnapshot(snapshotFile) && t.exportCSV(csvFile);
+    }
+
+    // Import semantics: an existing student's grades are replaced by the row's.
+    void putImported(String name, GradeList grades) {
+        String k = key(name);
+        Student s = students.get(k);
+        if (s == null) s = register(k, name);
+        s.replaceGrades(grades);
+    }
+
+    private Student register(String k, String name) {
+        Student s = newStudent(name);
+        students.put(k, s);
+        sorted.put(k, s);
+        return s;
+    }
+
+    // One student's share of a batch: its rows' grades, in row order.
+    private static final class BatchGroup {
+        final Student student;
+        int rows;
+        GradeList grades;
+
+        BatchGroup(Student student) {
+            this.student = student;
+        }
+    }
+
+    /*
+     Appends every valid (name, grade) row of the batch. Rows are grouped by
+     folded name first, so each student is looked up in the index once, its
+     grades are appended with a single array growth and its statistics are
+     updated once (Student.addGrades). Unknown students are added, in order
+     of first appearance. Invalid rows are skipped and
+     returned, in row order; the list is empty when every row was applied.
+    */
+    public List<GradeBatch.RowError> addGrades(GradeBatch batch) {
+        TrackerMetrics m = metrics;
+        long t0 = m == null ? 0 : System.nanoTime();
+        List<GradeBatch.RowError> errors = new ArrayList<>();
+        Map<String, BatchGroup> byKey = new HashMap<>();
+        List<BatchGroup> groups = new ArrayList<>();
+        BatchGroup[] rowGroup = new BatchGroup[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            String name = batch.name(i);
+            double g = batch.grade(i);
+            String problem = GradeBatch.validate(name, g);
+            if (problem != null) {
+                errors.add(new GradeBatch.RowError(i, name, g, problem));
+                continue;
+            }
+            String k = key(name);
+            BatchGroup group = byKey.get(k);
+            if (group == null) {
+                Student s = students.get(k);
+                if (s == null) {
+                    s = register(k, name);
+                    if (log != null) log.addStudent(s.getName());
+                }
+                group = new BatchGroup(s);
+                byKey.put(k, group);
+                groups.add(group);
+            }
+            group.rows++;
+            rowGroup[i] = group;
+        }
+        for (BatchGroup group : groups) group.grades = new GradeList(group.rows);
+        for (int i = 0; i < rowGroup.length; i++) {
+            if (rowGroup[i] != null) rowGroup[i].grades.add(batch.grade(i));
+        }
+        for (BatchGroup group : groups) group.student.addGrades(group.grades);
+        if (m != null) m.record(TrackerMetrics.Op.BATCH, t0, errors.isEmpty());
+        return errors;
+    }
+
+    static String rate(int rows, long startNanos) {
+        double secs = (System.nanoTime() - startNanos) / 1e9;
+        return String.format("%.3f s, %,.0f rows/sec", secs, secs > 0 ? rows / secs : 0.0);
+    }
+
     public boolean hasStudents() {
         return !students.isEmpty();
     }
+
+    // The k students with the largest metric, best first; ties go to the name that sorts first.
+    public List<Student> topK(int k, RankMetric metric) {
+        return rank(k, metric, Comparator.comparingDouble(metric::of));
+    }
+
+    // The k students with the smallest metric, lowest first; ties go to the name that sorts first.
+    public List<Student> bottomK(int k, RankMetric metric) {
+        return rank(k, metric, Comparator.comparingDouble(metric::of).reversed());
+    }
+
+    /*
+     Bounded heap over the running statistics: O(n log k), no full sort.
+     `better` orders by metric from worst to best; students without grades
+     are skipped.
+    */
+    private List<Student> rank(int k, RankMetric metric, Comparator<Student> better) {
+        if (k <= 0) return new ArrayList<>();
+        Comparator<Student> order = better.thenComparing(Student::getName, String.CASE_INSENSITIVE_ORDER.reversed());
+        PriorityQueue<Student> heap = new PriorityQueue<>(Math.min(k, Math.max(1, students.size())), order);
+        for (Student s : students.values()) {
+            if (s.getGradeCount() == 0) continue;
+            if (heap.size() < k) {
+                heap.add(s);
+            } else if (order.compare(s, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(s);
+            }
+        }
+        List<Student> out = new ArrayList<>(heap);
+        out.sort(order.reversed());
+        return out;
+    }
+}
+
+/*
+ ConcurrentGradeTracker: GradeTracker variant for many ingestion threads.
+ Registration is a single ConcurrentHashMap.computeIfAbsent, so two threads
+ adding the same name get the same Student. Grade appends lock only the
+ student they touch, and overallStats() visits students one at a time
+ under that same per-student lock, so writers are never stopped as a whole.
+ Students handed out by findStudentByName must only be mutated through
+ this class. Iteration order is unspecified; snapshot() returns an ordinary
+ GradeTracker for reports and persistence.
+
+ With lockFreeStats, students keep AtomicGradeStats instead: writers to the
+ same student only share the brief array-append lock, and statistics reads
+ (per student and overall) take no lock at all.
+*/
+class ConcurrentGradeTracker {
+    private final ConcurrentHashMap<String, Student> students = new ConcurrentHashMap<>();
+    private final boolean lockFreeStats;
+
+    public ConcurrentGradeTracker() {
+        this(false);
+    }
+
+    public ConcurrentGradeTracker(boolean lockFreeStats) {
+        this.lockFreeStats = lockFreeStats;
+    }
+
+    private Student newStudent(String name) {
+        Student s = new Student(name);
+        if (lockFreeStats) s.shareStats();
+        return s;
+    }
+
+    // Returns false if a student with that name already exists.
+    public boolean addStudent(String name) {
+        return students.putIfAbsent(GradeTracker.key(name), newStudent(name)) == null;
+    }
+
+    // Returns the student with that name, registering it first if needed.
+    public Student registerStudent(String name) {
+        return students.computeIfAbsent(GradeTracker.key(name), k -> newStudent(name));
+    }
+
+    public boolean removeStudent(String name) {
+        return students.remove(GradeTracker.key(name)) != null;
+    }
+
+    public Student findStudentByName(String name) {
+        return students.get(GradeTracker.key(name));
+    }
+
+    public int studentCount() {
+        return students.size();
+    }
+
+    // Appends a grade, registering the student if needed.
+    public void addGrade(String name, double g) {
+        append(registerStudent(name), g);
+    }
+
+    // Returns false if there is no student with that name.
+    public boolean addGradeIfPresent(String name, double g) {
+        Student s = students.get(GradeTracker.key(name));
+        if (s == null) return false;
+        append(s, g);
+        return true;
+    }
+
+    private void append(Student s, double g) {
+        if (lockFreeStats) {
+            s.addGrade(g);
+            return;
+        }
+        synchronized (s) {
+            s.addGrade(g);
+        }
+    }
+
+    public void setGrades(String name, GradeList grades) {
+        Student s = registerStudent(name);
+        synchronized (s) {
+            s.setGrades(grades);
+        }
+    }
+
+    // Each student's statistics are read atomically; the total is weakly consistent.
+    public OverallStats overallStats() {
+        OverallStats stats = new OverallStats();
+        for (Student s : students.values()) {
+            if (lockFreeStats) {
+                s.addTo(stats);
+                continue;
+            }
+            synchronized (s) {
+                s.addTo(stats);
+            }
+        }
+        return stats;
+    }
+
+    // Copies every student into a plain tracker, sorted by name.
+    public GradeTracker snapshot() {
+        List<Student> sorted = new ArrayList<>(students.values());
+        sorted.sort(Comparator.comparing(Student::getName, String.CASE_INSENSITIVE_ORDER));
+        GradeTracker copy = new GradeTracker();
+        for (Student s : sorted) {
+            GradeList grades;
+            synchronized (s) {
+                grades = s.copyGrades();
+            }
+            copy.putImported(s.getName(), grades);
+        }
+        return copy;
+    }
 }
 
 /* Main application */
@@ -192,7 +2930,36 @@ public class StudentGradeTrackerApp {
     private static GradeTracker tracker = new GradeTracker();
     private static Scanner sc = new Scanner(System.in);
 
+    // Pass --wal <dir> to recover from and log every change to a write-ahead log,
+    // and --metrics to record operation counts and latencies (menu option 12).
+    // -c <command> (repeatable) and --script <file|-> run commands without the menu.
     public static void main(String[] args) {
+        List<String> commands = new ArrayList<>();
+        boolean batch = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--metrics")) {
+                tracker.enableMetrics();
+            } else if (args[i].equals("--wal") && i + 1 < args.length) {
+                if (!tracker.openLog(args[++i], 10)) return;
+            } else if (args[i].equals("-c") && i + 1 < args.length) {
+                commands.add(args[++i]);
+                batch = true;
+            } else if (args[i].equals("--script") && i + 1 < args.length) {
+                if (!readScript(args[++i], commands)) return;
+                batch = true;
+            } else {
+                System.out.println((args[i].equals("--wal") || args[i].equals("-c") || args[i].equals("--script")
+                    ? "Missing value for " : "Unknown option: ") + args[i]);
+                usage("java StudentGradeTrackerApp [--wal <dir>] [--metrics] [-c <command>]... [--script <file|->]");
+                System.exit(2);
+            }
+        }
+        if (batch) {
+            boolean ok = runBatch(commands);
+            tracker.closeLog();
+            if (!ok) System.exit(1);
+            return;
+        }
         System.out.println("=== Student Grade Tracker ===");
         boolean quit = false;
         while (!quit) {
@@ -206,14 +2973,159 @@ public class StudentGradeTrackerApp {
                 case "5": handleExportCSV(); break;
                 case "6": handleImportCSV(); break;
                 case "7": handleListStudents(); break;
+                case "8": handleSaveSnapshot(); break;
+                case "9": handleLoadSnapshot(); break;
+                case "10": handleRankStudents(); break;
+                case "11": handleShowDistribution(); break;
+                case "12": handleShowMetrics(); break;
                 case "0": quit = true; break;
                 default: System.out.println("Invalid option. Try again."); break;
             }
+            tracker.maybeCheckpoint();
         }
+        tracker.closeLog();
         System.out.println("Goodbye!");
         sc.close();
     }
 
+    // One command per line, read as UTF-8 like the CSV files; "-" reads stdin.
+    private static boolean readScript(String fn, List<String> commands) {
+        try (BufferedReader in = fn.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : new BufferedReader(new InputStreamReader(new FileInputStream(fn), StandardCharsets.UTF_8))) {
+            for (String line; (line = in.readLine()) != null; ) commands.add(line);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error reading script: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /*
+     Batch mode: runs each command (blank lines and # comments skipped) with
+     no menu or prompts. All output, reports included, goes through one 64 KB
+     buffer that reaches stdout only when it fills and is flushed once at the
+     end; every command is followed by a line with its status and wall time.
+     Returns false if any command failed.
+    */
+    private static boolean runBatch(List<String> commands) {
+        PrintStream console = System.out;
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16));
+        System.setOut(out);
+        int run = 0;
+        int failed = 0;
+        long start = System.nanoTime();
+        try {
+            for (String line : commands) {
+                String cmd = line.trim();
+                if (cmd.isEmpty() || cmd.startsWith("#")) continue;
+                long t0 = System.nanoTime();
+                boolean ok = runCommand(cmd);
+                run++;
+                if (!ok) failed++;
+                out.println(String.format("[%s %.3f ms] %s", ok ? "ok" : "FAILED", (System.nanoTime() - t0) / 1e6, cmd));
+                tracker.maybeCheckpoint();
+            }
+            out.println(String.format("%d commands, %d failed, %.3f ms", run, failed, (System.nanoTime() - start) / 1e6));
+        } finally {
+            out.flush();
+            System.setOut(console);
+        }
+        return failed == 0;
+    }
+
+    /*
+     One batch command:
+       add <name> | grade <name> <grade> | remove <name> | list | summary
+       import <file> [stream|mapped|parallel] | export <file> [stream|channel]
+       save <file> | load <file> | top|bottom <k> [average|highest|lowest]
+       distribution [name] | metrics [text|json]
+     File names are single words; student names run to the end of the line
+     (for grade, up to the last word). Unlike the menu, grade does not ask
+     before adding a student it cannot find: it adds them and the grade.
+    */
+    static boolean runCommand(String cmd) {
+        String[] w = cmd.split("\\s+");
+        String rest = w.length > 1 ? cmd.substring(w[0].length()).trim() : "";
+        try {
+            switch (w[0].toLowerCase()) {
+                case "add":
+                    if (rest.isEmpty()) return usage("add <name>");
+                    if (tracker.findStudentByName(rest) != null) {
+                        System.out.println("Student already exists: " + rest);
+                        return false;
+                    }
+                    tracker.addStudent(rest);
+                    return true;
+                case "grade": {
+                    if (w.length < 3) return usage("grade <name> <grade>");
+                    String name = rest.substring(0, rest.length() - w[w.length - 1].length()).trim();
+                    double g = Double.parseDouble(w[w.length - 1]);
+                    if (g < 0) {
+                        System.out.println("Grade must be >= 0");
+                        return false;
+                    }
+                    Student s = tracker.findStudentByName(name);
+                    if (s == null) {
+                        tracker.addStudent(name);
+                        s = tracker.findStudentByName(name);
+                    }
+                    s.addGrade(g);
+                    return true;
+                }
+                case "remove":
+                    if (rest.isEmpty()) return usage("remove <name>");
+                    if (tracker.removeStudent(rest)) return true;
+                    System.out.println("Student not found.");
+                    return false;
+                case "list":
+                    tracker.printAllStudents();
+                    return true;
+                case "summary":
+                    handleShowSummary();
+                    return true;
+                case "import":
+                    if (w.length < 2) return usage("import <file> [stream|mapped|parallel]");
+                    return tracker.importCSV(w[1], w.length > 2 ? ImportMode.valueOf(w[2].toUpperCase()) : ImportMode.STREAM);
+                case "export":
+                    if (w.length < 2) return usage("export <file> [stream|channel]");
+                    return tracker.exportCSV(w[1], w.length > 2 ? ExportMode.valueOf(w[2].toUpperCase()) : ExportMode.STREAM);
+                case "save":
+                    if (w.length < 2) return usage("save <file>");
+                    return tracker.saveSnapshot(w[1]);
+                case "load":
+                    if (w.length < 2) return usage("load <file>");
+                    return tracker.loadSnapshot(w[1]);
+                case "top":
+                case "bottom": {
+                    if (w.length < 2) return usage(w[0] + " <k> [average|highest|lowest]");
+                    int k = Integer.parseInt(w[1]);
+                    RankMetric metric = w.length > 2 ? RankMetric.valueOf(w[2].toUpperCase()) : RankMetric.AVERAGE;
+                    printRanked(w[0].equalsIgnoreCase("top") ? tracker.topK(k, metric) : tracker.bottomK(k, metric));
+                    return true;
+                }
+                case "distribution":
+                    return printDistribution(rest);
+                case "metrics":
+                    return printMetrics(w.length > 1 && w[1].equalsIgnoreCase("json"));
+                default:
+                    System.out.println("Unknown command: " + w[0]);
+                    return false;
+            }
+        } catch (NumberFormatException ex) {
+            System.out.println("Invalid number.");
+            return false;
+        } catch (IllegalArgumentException ex) { // unknown import/export mode or rank metric
+            System.out.println("Invalid argument: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean usage(String syntax) {
+        System.out.println("Usage: " + syntax);
+        return false;
+    }
+
     private static void printMenu() {
         System.out.println("\nMenu:");
         System.out.println("1) Add new student");
@@ -223,6 +3135,11 @@ public class StudentGradeTrackerApp {
         System.out.println("5) Export to CSV");
         System.out.println("6) Import from CSV");
         System.out.println("7) List students");
+        System.out.println("8) Save binary snapshot");
+        System.out.println("9) Load binary snapshot");
+        System.out.println("10) Show top / bottom students");
+        System.out.println("11) Show grade distribution");
+        System.out.println("12) Show metrics");
         System.out.println("0) Exit");
         System.out.print("Choose: ");
     }
@@ -277,15 +3194,29 @@ public class StudentGradeTrackerApp {
             System.out.println("No students.");
             return;
         }
-        System.out.println("\n--- Student List ---");
-        tracker.printAllStudents();
-        double overallAvg = tracker.overallAverage();
-        double overallHigh = tracker.overallHighest();
-        double overallLow = tracker.overallLowest();
-        System.out.println("\n--- Overall Statistics ---");
-        System.out.println("Overall Average: " + (Double.isNaN(overallAvg) ? "N/A" : String.format("%.2f", overallAvg)));
-        System.out.println("Overall Highest: " + (Double.isNaN(overallHigh) ? "N/A" : String.format("%.2f", overallHigh)));
-        System.out.println("Overall Lowest : " + (Double.isNaN(overallLow) ? "N/A" : String.format("%.2f", overallLow)));
+        PrintWriter out = GradeTracker.consoleWriter();
+        out.println("\n--- Student List ---");
+        tracker.printAllStudents(out);
+        OverallStats stats = tracker.overallStats();
+        StringBuilder sb = new StringBuilder(512);
+        String nl = System.lineSeparator();
+        sb.append(nl).append("--- Overall Statistics ---").append(nl);
+        appendFigure(sb, "Overall Average: ", stats.getMean(), nl);
+        appendFigure(sb, "Overall Highest: ", stats.getHighest(), nl);
+        appendFigure(sb, "Overall Lowest : ", stats.getLowest(), nl);
+        appendFigure(sb, "Overall Std Dev: ", stats.getStdDev(), nl);
+        appendFigure(sb, "Overall Median : ", tracker.median(), nl);
+        appendFigure(sb, "Overall P10    : ", tracker.quantile(0.1), nl);
+        appendFigure(sb, "Overall P90    : ", tracker.quantile(0.9), nl);
+        GradeTracker.drain(sb, new char[sb.length()], out);
+        out.flush();
+    }
+
+    private static void appendFigure(StringBuilder sb, String label, double v, String nl) {
+        sb.append(label);
+        if (Double.isNaN(v)) sb.append("N/A");
+        else TwoDecimals.append(sb, v);
+        sb.append(nl);
     }
 
     private static void handleExportCSV() {
@@ -308,6 +3239,90 @@ public class StudentGradeTrackerApp {
         tracker.importCSV(fn);
     }
 
+    private static void handleSaveSnapshot() {
+        System.out.print("Enter snapshot filename (e.g., students.sgts): ");
+        String fn = sc.nextLine().trim();
+        if (fn.isEmpty()) {
+            System.out.println("Filename empty.");
+            return;
+        }
+        if (tracker.saveSnapshot(fn)) System.out.println("Saved snapshot to " + fn);
+    }
+
+    private static void handleLoadSnapshot() {
+        System.out.print("Enter snapshot filename (e.g., students.sgts): ");
+        String fn = sc.nextLine().trim();
+        if (fn.isEmpty()) {
+            System.out.println("Filename empty.");
+            return;
+        }
+        tracker.loadSnapshot(fn);
+    }
+
+    private static void handleRankStudents() {
+        System.out.print("Top or bottom? (t/b): ");
+        boolean top = !sc.nextLine().trim().toLowerCase().startsWith("b");
+        System.out.print("How many students: ");
+        int k;
+        try {
+            k = Integer.parseInt(sc.nextLine().trim());
+        } catch (NumberFormatException ex) {
+            System.out.println("Invalid number.");
+            return;
+        }
+        System.out.print("Rank by (avg/high/low): ");
+        String m = sc.nextLine().trim().toLowerCase();
+        RankMetric metric = m.startsWith("h") ? RankMetric.HIGHEST
+            : m.startsWith("l") ? RankMetric.LOWEST : RankMetric.AVERAGE;
+        printRanked(top ? tracker.topK(k, metric) : tracker.bottomK(k, metric));
+    }
+
+    private static void printRanked(List<Student> ranked) {
+        if (ranked.isEmpty()) {
+            System.out.println("No students with grades.");
+            return;
+        }
+        for (int i = 0; i < ranked.size(); i++) {
+            System.out.println((i + 1) + ". " + ranked.get(i));
+        }
+    }
+
+    private static void handleShowDistribution() {
+        System.out.print("Enter student name (blank for all students): ");
+        printDistribution(sc.nextLine().trim());
+    }
+
+    private static boolean printDistribution(String name) {
+        GradeHistogram h = name.isEmpty() ? tracker.histogram() : tracker.histogram(name);
+        if (h == null) {
+            System.out.println("Student not found.");
+            return false;
+        }
+        System.out.println("\n--- Grade Distribution" + (name.isEmpty() ? "" : " for " + name) + " ---");
+        System.out.print(h.report());
+        return true;
+    }
+
+    private static void handleShowMetrics() {
+        if (tracker.metrics() == null) {
+            printMetrics(false);
+            return;
+        }
+        System.out.print("Format (text/json) [text]: ");
+        printMetrics(sc.nextLine().trim().equalsIgnoreCase("json"));
+    }
+
+    private static boolean printMetrics(boolean json) {
+        TrackerMetrics m = tracker.metrics();
+        if (m == null) {
+            System.out.println("Metrics are off. Start with --metrics to record them.");
+            return false;
+        }
+        System.out.println("\n--- Metrics ---");
+        System.out.print(json ? m.toJson() : m.toText());
+        return true;
+    }
+
     private static void handleListStudents() {
         tracker.printAllStudents();
     }